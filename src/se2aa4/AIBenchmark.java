@@ -0,0 +1,280 @@
+package se2aa4;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class measures how fast the AI is. It is not part of the
+ * game, it is run on its own to compare different ways of searching
+ * on the same set of positions.
+ */
+public class AIBenchmark {
+	private static final int POSITION_COUNT = 20;
+	private static final long SEED = 4;
+	// The width, height and length of a winning line of the boards to compare
+	// the normal board with, the biggest that still fit in a bitboard
+	private static final int[][] BOARD_SIZES = {{7, 6, 4}, {8, 7, 4}, {9, 6, 4}, {7, 6, 5}, {9, 6, 5}};
+
+	private final int width;
+	private final int height;
+	private final int connectLength;
+	private BoardSnapshot[] positions;
+	private PlayerColor[] players;
+
+	/**
+	 * Create the benchmark positions on a normal board.
+	 */
+	public AIBenchmark() {
+		this(BoardModel.DEFAULT_WIDTH, BoardModel.DEFAULT_HEIGHT, BoardModel.DEFAULT_CONNECT_LENGTH);
+	}
+
+	/**
+	 * Create the benchmark positions by playing random moves. The
+	 * same seed is always used so every run uses the same positions.
+	 * @param width the amount of columns
+	 * @param height the amount of rows
+	 * @param connectLength how many pieces in a row it takes to win
+	 */
+	public AIBenchmark(int width, int height, int connectLength) {
+		this.width = width;
+		this.height = height;
+		this.connectLength = connectLength;
+		Random random = new Random(SEED);
+		positions = new BoardSnapshot[POSITION_COUNT];
+		players = new PlayerColor[POSITION_COUNT];
+		for (int i = 0; i < POSITION_COUNT; i++) {
+			BoardModel board = new BoardModel(width, height, connectLength);
+			PlayerColor player = PlayerColor.RED;
+			int moves = random.nextInt(12);
+			for (int j = 0; j < moves; j++) {
+				int column = random.nextInt(board.getGridWidth());
+				if (board.doTemporaryMove(column, player)) {
+					// Don't let the game end
+					if (board.getWinner() != PlayerColor.NONE) {
+						board.undoTemporaryMove(column);
+					} else {
+						player = player.opponent();
+					}
+				}
+			}
+			positions[i] = board.snapshot();
+			players[i] = player;
+		}
+	}
+
+	/**
+	 * Search every position to a fixed depth. Only the searches are timed,
+	 * the AI and its threads are created first and its table is cleared
+	 * before each position without being timed.
+	 * @param depth how many moves to look ahead
+	 * @param threads how many threads the AI uses
+	 * @param moves the chosen move of each position is stored in here
+	 * @return how long it took in nanoseconds
+	 */
+	public long timeSearch(int depth, int threads, int[] moves) {
+		ConnectFourAI ai = new ConnectFourAI(positions[0]);
+		ai.setThreadCount(threads);
+		// The threads and workers are created by the first search
+		ai.getBestMove(players[0], 1);
+		long time = 0;
+		for (int i = 0; i < POSITION_COUNT; i++) {
+			ai.newGame();
+			ai.setPosition(positions[i]);
+			long startTime = System.nanoTime();
+			moves[i] = ai.getBestMove(players[i], depth);
+			time += System.nanoTime() - startTime;
+		}
+		ai.close();
+		return time;
+	}
+
+	/**
+	 * Compare searching with one thread to searching with several.
+	 * @param depth how many moves to look ahead
+	 * @param threads how many threads to compare against one thread
+	 */
+	public void compareThreads(int depth, int threads) {
+		int[] serialMoves = new int[POSITION_COUNT];
+		int[] parallelMoves = new int[POSITION_COUNT];
+		long serialTime = timeSearch(depth, 1, serialMoves);
+		long parallelTime = timeSearch(depth, threads, parallelMoves);
+
+		boolean sameMoves = Arrays.equals(serialMoves, parallelMoves);
+		System.out.printf("depth %d: 1 thread %d ms, %d threads %d ms, speedup %.2fx, same moves: %b%n",
+				depth, serialTime / 1000000, threads, parallelTime / 1000000,
+				(double) serialTime / parallelTime, sameMoves);
+	}
+
+	/**
+	 * Compare how much of the game tree two move orderings search. The
+	 * counts are added up over every position.
+	 * @param depth how many moves to look ahead
+	 * @param before the ordering to compare against
+	 * @param after the ordering being tested
+	 */
+	public void compareOrderings(int depth, MoveOrdering before, MoveOrdering after) {
+		int[] beforeMoves = new int[POSITION_COUNT];
+		int[] afterMoves = new int[POSITION_COUNT];
+		long[] beforeCounts = countNodes(depth, SearchDriver.NEGAMAX, before, beforeMoves);
+		long[] afterCounts = countNodes(depth, SearchDriver.NEGAMAX, after, afterMoves);
+		
+		boolean sameMoves = Arrays.equals(beforeMoves, afterMoves);
+		System.out.printf("depth %d: %s %d nodes %.1f%% first move cutoffs, %s %d nodes %.1f%% first move cutoffs, same moves: %b%n",
+				depth, before, beforeCounts[0], 100.0 * beforeCounts[2] / Math.max(1, beforeCounts[1]),
+				after, afterCounts[0], 100.0 * afterCounts[2] / Math.max(1, afterCounts[1]), sameMoves);
+	}
+	
+	/**
+	 * Compare each search driver against plain negamax.
+	 * @param depth how many moves to look ahead
+	 */
+	public void compareDrivers(int depth) {
+		int[] negamaxMoves = new int[POSITION_COUNT];
+		long[] negamaxCounts = countNodes(depth, SearchDriver.NEGAMAX, MoveOrdering.CENTER_FIRST, negamaxMoves);
+		StringBuilder line = new StringBuilder();
+		line.append(String.format("depth %d: %s %d nodes %d ms", depth, SearchDriver.NEGAMAX,
+				negamaxCounts[0], negamaxCounts[3] / 1000000));
+		for (SearchDriver driver : SearchDriver.values()) {
+			if (driver == SearchDriver.NEGAMAX) {
+				continue;
+			}
+			int[] moves = new int[POSITION_COUNT];
+			long[] counts = countNodes(depth, driver, MoveOrdering.CENTER_FIRST, moves);
+			line.append(String.format(", %s %d nodes %d ms same moves: %b", driver,
+					counts[0], counts[3] / 1000000, Arrays.equals(negamaxMoves, moves)));
+		}
+		System.out.println(line);
+	}
+	
+	/**
+	 * Compare how fast the search is on boards of different sizes. Every
+	 * board gets its own random positions, so the amount of nodes shows
+	 * how much bigger the tree gets and the nodes per second show how
+	 * much slower each node gets.
+	 * @param depth how many moves to look ahead
+	 */
+	public static void compareSizes(int depth) {
+		StringBuilder line = new StringBuilder();
+		line.append(String.format("depth %d:", depth));
+		for (int[] size : BOARD_SIZES) {
+			AIBenchmark benchmark = new AIBenchmark(size[0], size[1], size[2]);
+			long[] counts = benchmark.countNodes(depth, SearchDriver.NEGAMAX, MoveOrdering.CENTER_FIRST, new int[POSITION_COUNT]);
+			line.append(String.format(" %s %d nodes %d ms %.0f knodes/s,", benchmark.getBoardName(),
+					counts[0], counts[3] / 1000000, counts[0] * 1000000.0 / Math.max(1, counts[3])));
+		}
+		line.setLength(line.length() - 1);
+		System.out.println(line);
+	}
+	
+	/**
+	 * Describe the kind of board the positions are on.
+	 * @return the width, height and length of a winning line
+	 */
+	private String getBoardName() {
+		return width + "x" + height + " connect " + connectLength;
+	}
+	
+	/**
+	 * Search every position to a fixed depth on one thread and count the work done.
+	 * @param depth how many moves to look ahead
+	 * @param driver how to search
+	 * @param ordering the move ordering to use
+	 * @param moves the chosen move of each position is stored in here
+	 * @return the amount of nodes, cutoffs, cutoffs on the first move and nanoseconds it took
+	 */
+	public long[] countNodes(int depth, SearchDriver driver, MoveOrdering ordering, int[] moves) {
+		long[] counts = new long[4];
+		for (int i = 0; i < POSITION_COUNT; i++) {
+			ConnectFourAI ai = new ConnectFourAI(new BoardModel(positions[i]), driver);
+			ai.setMoveOrdering(ordering);
+			long startTime = System.nanoTime();
+			moves[i] = ai.getBestMove(players[i], depth);
+			counts[3] += System.nanoTime() - startTime;
+			counts[0] += ai.getNodeCount();
+			counts[1] += ai.getCutoffCount();
+			counts[2] += ai.getFirstMoveCutoffCount();
+		}
+		return counts;
+	}
+	
+	/**
+	 * Play a game from every position between the search AI and the Monte
+	 * Carlo AI, with both getting the same amount of time per move, and count
+	 * how many games each one won. The AIs take turns going first.
+	 * @param timePerMove how long each AI gets to think about each move
+	 */
+	public void compareEngines(Duration timePerMove) {
+		int searchWins = 0;
+		int monteCarloWins = 0;
+		int draws = 0;
+		SearchStatistics searchStatistics = null;
+		SearchStatistics monteCarloStatistics = null;
+		for (int i = 0; i < POSITION_COUNT; i++) {
+			BoardModel board = new BoardModel(positions[i]);
+			PlayerColor player = players[i];
+			ConnectFourAI searchAI = new ConnectFourAI(board);
+			MonteCarloAI monteCarloAI = new MonteCarloAI(board, 1, SEED + i);
+			PlayerColor searchPlayer = (i % 2 == 0) ? player : player.opponent();
+			
+			while (board.getWinner() == PlayerColor.NONE && board.getPieceCount(PlayerColor.NONE) > 0) {
+				GameAI ai = (player == searchPlayer) ? searchAI : monteCarloAI;
+				ai.setPosition(board);
+				SearchResult result = ai.getSearchResult(player, timePerMove);
+				if (ai == searchAI) {
+					searchStatistics = (searchStatistics == null) ? result.getStatistics() : searchStatistics.add(result.getStatistics());
+				} else {
+					monteCarloStatistics = (monteCarloStatistics == null) ? result.getStatistics() : monteCarloStatistics.add(result.getStatistics());
+				}
+				board.doTemporaryMove(result.getBestMove(), player);
+				player = player.opponent();
+			}
+			
+			PlayerColor winner = board.getWinner();
+			if (winner == PlayerColor.NONE) {
+				draws++;
+			} else if (winner == searchPlayer) {
+				searchWins++;
+			} else {
+				monteCarloWins++;
+			}
+		}
+		System.out.printf("%s, %d ms per move: search won %d, Monte Carlo won %d, %d draws%n",
+				getBoardName(), timePerMove.toMillis(), searchWins, monteCarloWins, draws);
+		System.out.println("  search: " + searchStatistics);
+		System.out.println("  Monte Carlo: " + monteCarloStatistics);
+	}
+	
+	/**
+	 * Run the benchmark.
+	 * @param args optionally the amount of threads and the deepest depth to search
+	 */
+	public static void main(String[] args) {
+		int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int maxDepth = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+		AIBenchmark benchmark = new AIBenchmark();
+		// Run once first so the JIT compiler has warmed up
+		benchmark.timeSearch(6, 1, new int[POSITION_COUNT]);
+		for (int depth = 6; depth <= maxDepth; depth++) {
+			benchmark.compareThreads(depth, threads);
+		}
+		for (int depth = 6; depth <= maxDepth; depth++) {
+			benchmark.compareOrderings(depth, MoveOrdering.CENTER_FIRST, MoveOrdering.KILLER_HISTORY);
+		}
+		for (int depth = 6; depth <= maxDepth; depth++) {
+			benchmark.compareDrivers(depth);
+		}
+		benchmark.compareEngines(Duration.ofMillis(50));
+		
+		for (int depth = 6; depth <= maxDepth; depth++) {
+			compareSizes(depth);
+		}
+		// The Monte Carlo AI doesn't need an evaluation tuned to the board
+		// so it might do better against the search on the bigger boards
+		for (int i = 1; i < BOARD_SIZES.length; i++) {
+			int[] size = BOARD_SIZES[i];
+			new AIBenchmark(size[0], size[1], size[2]).compareEngines(Duration.ofMillis(50));
+		}
+	}
+}
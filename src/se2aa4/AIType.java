@@ -0,0 +1,11 @@
+package se2aa4;
+/**
+ * This enum is used to choose which kind of AI plays
+ * against the human in a {@link GameEngine}.
+ */
+public enum AIType {
+	// The alpha-beta search of ConnectFourAI
+	SEARCH,
+	// The Monte Carlo tree search of MonteCarloAI
+	MONTE_CARLO
+}
@@ -7,6 +7,7 @@ public enum BoardComponentType {
 	BOARD_BUTTON,
 	NEW_GAME_2P_BUTTON,
 	NEW_GAME_AI_BUTTON,
+	NEW_GAME_MCTS_BUTTON,
 	EDIT_BUTTON,
 	RED_BUTTON,
 	BLUE_BUTTON,
@@ -5,37 +5,70 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.Executor;
 
 import javax.swing.JOptionPane;
-import javax.swing.SwingWorker;
+import javax.swing.SwingUtilities;
 
 /**
  * This class is responsible for listening to the user input
- * events that the view creates and reacting to them by updating
- * the models. It also listens to the models and updates the
- * view when necessary.
+ * events that the view creates and passing them on to the
+ * {@link GameEngine}, which runs the game. It also listens to
+ * the models and updates the view when necessary.
  */
 public class BoardController implements ActionListener, Observer {
 	private BoardView view;
+	private GameEngine engine;
 	private BoardModel boardModel;
 	private GameStateModel stateModel;
 	private HashMap<GameState, BoardPanels> panelMap;
+	// Whether to show how much work the AI did in the status label
+	private boolean showStatistics;
 	
 	private static final String stateFileName = "gamestate.bin";
 	private static final String boardFileName = "board.bin";
+	private static final String bookFileName = "book.bin";
 	
 	/**
 	 * Initializes the board controller and it's associated
-	 * view and models. The controller will listen for updates
-	 * from the view and model after it is created.
+	 * view and models for a normal connect four board.
 	 */
 	public BoardController() {
+		this(BoardModel.DEFAULT_WIDTH, BoardModel.DEFAULT_HEIGHT, BoardModel.DEFAULT_CONNECT_LENGTH, true);
+	}
+	
+	/**
+	 * Initializes the board controller and it's associated
+	 * view and engine. The controller will listen for updates
+	 * from the view and models after it is created.
+	 * @param width the amount of columns
+	 * @param height the amount of rows
+	 * @param connectLength how many pieces in a row it takes to win
+	 * @param showStatistics true to show how much work the AI did after each of its moves
+	 */
+	public BoardController(int width, int height, int connectLength, boolean showStatistics) {
+		this.showStatistics = showStatistics;
 		setUpPanelMap();
-		boardModel = new BoardModel();
-		stateModel = new GameStateModel();
+		// The AI's moves are played on the GUI thread like everything else
+		engine = new GameEngine(width, height, connectLength, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				SwingUtilities.invokeLater(command);
+			}
+		});
+		boardModel = engine.getBoardModel();
+		stateModel = engine.getStateModel();
 		boardModel.addObserver(this);
 		stateModel.addObserver(this);
-		view = new BoardView(boardModel.getGridWidth(), boardModel.getGridHeight(), this);
+		engine.addObserver(this);
+		view = new BoardView(width, height, connectLength, this);
+		
+		// The opening book is optional, without it the AI just searches the openings too
+		try {
+			engine.setOpeningBook(OpeningBook.open(bookFileName));
+		} catch (IOException exception) {
+			engine.setOpeningBook(null);
+		}
 	}
 	
 	/**
@@ -55,8 +88,8 @@ public class BoardController implements ActionListener, Observer {
 	/**
 	 * This method is called when an event on the view happens.
 	 * This will be some sort of a user input event and this
-	 * method reacts to the user input events by updating the
-	 * appropriate models.
+	 * method reacts to the user input events by telling the
+	 * engine what the user did.
 	 * @param e the event
 	 */
 	@Override
@@ -67,96 +100,63 @@ public class BoardController implements ActionListener, Observer {
 		// Decide what to do based off of what component it is
 		switch (type) {
 		case BOARD_BUTTON:
-			// If a button on the game board was pressed in the edit state
-			// set that position to be the current edit color
+			// In the edit state the position is set to the current edit color,
+			// otherwise a piece is dropped in its column if it's a human's turn
 			Position buttonPosition = view.lookupButtonPosition(e.getSource());
 			if (stateModel.getState() == GameState.EDIT_STATE) {
-				boardModel.setGridPiece(buttonPosition, stateModel.getEditColor());
-			} else if (stateModel.getState() == GameState.PLAY_STATE) {
-				// Make sure it's a humans turn
-				if (stateModel.getCurrentPlayer() != stateModel.getAIPlayer()) {
-					// If the piece was successfully added
-					if (boardModel.doMove(buttonPosition.x, stateModel.getCurrentPlayer())) {
-							stateModel.nextTurn();
-					}
-				}
+				engine.setPiece(buttonPosition);
+			} else {
+				engine.play(buttonPosition.x);
 			}
 			break;
 		case NEW_GAME_2P_BUTTON:
-			stateModel.setAIPlayer(PlayerColor.NONE);
-			stateModel.setCurrentPlayer(boardModel.getStartPlayer());
-			stateModel.setState(GameState.PLAY_STATE);
+			engine.newGame(PlayerColor.NONE, null);
 			break;
 		case NEW_GAME_AI_BUTTON:
-			stateModel.setAIPlayer(PlayerColor.BLUE);
-			stateModel.setCurrentPlayer(boardModel.getStartPlayer());
-			stateModel.setState(GameState.PLAY_STATE);
+			engine.newGame(PlayerColor.BLUE, AIType.SEARCH);
+			break;
+		case NEW_GAME_MCTS_BUTTON:
+			engine.newGame(PlayerColor.BLUE, AIType.MONTE_CARLO);
 			break;
 		case EDIT_BUTTON:
-			stateModel.setState(GameState.EDIT_STATE);
+			engine.startEditing();
 			view.setTitleLabel("Edit mode");
 			break;
 		case BLUE_BUTTON:
-			stateModel.setEditColor(PlayerColor.BLUE);
+			engine.setEditColor(PlayerColor.BLUE);
 			view.setTitleLabel("Blue selected");
 			break;
 		case RED_BUTTON:
-			stateModel.setEditColor(PlayerColor.RED);
+			engine.setEditColor(PlayerColor.RED);
 			view.setTitleLabel("Red selected");
 			break;
 		case NONE_BUTTON:
-			stateModel.setEditColor(PlayerColor.NONE);
+			engine.setEditColor(PlayerColor.NONE);
 			view.setTitleLabel("None selected");
 			break;
 		case DONE_BUTTON:
-			// If done is pressed while in the edit state
-			// this means done editing so try go to the
-			// play state
+			// If done is pressed while in the edit state this means done
+			// editing so try go to the play state, or else the error
+			// should be displayed
 			if (stateModel.getState() == GameState.EDIT_STATE) {
-				// Check if the current state is valid and if not report the error
-				boolean valid = true;
-				String errorMessage = "";
-				
-				// Make sure the amount of pieces is balanced
-				PlayerColor errorPlayer = boardModel.getErrorColor();
-				if (errorPlayer != PlayerColor.NONE) {
-					errorMessage = "Too many " + errorPlayer.toString() + "S";
-					valid = false;
-				}
-				
-				// Make sure there are no winners
-				errorPlayer = boardModel.getWinner();
-				if (errorPlayer != PlayerColor.NONE) {
-					errorMessage = errorPlayer.toString() + " already won";
-					valid = false;
-				}
-				
-				// Make sure there are no floating pieces and if there is highlight them
-				Position[] errors = boardModel.getErrorPositions();
-				if (errors != null) {
-					errorMessage = "There are floating pieces";
-					for (Position position : errors) {
-						view.highlightPiece(position);
+				String errorMessage = engine.finishEditing();
+				if (errorMessage != null) {
+					// If there are floating pieces highlight them
+					Position[] errors = boardModel.getErrorPositions();
+					if (errors != null) {
+						for (Position position : errors) {
+							view.highlightPiece(position);
+						}
 					}
-					valid = false;
-				}
-				
-				// If valid move to the PLAY_STATE and figure out who should go first
-				if (valid) {
-					stateModel.setState(GameState.PLAY_STATE);
-					stateModel.setCurrentPlayer(boardModel.getStartPlayer());
-				} else {
-					// Or else an error happened in which case the error should be displayed
 					view.setTitleLabel(errorMessage);
 				}
 			}
 			break;
 		case LOAD_BUTTON:
 			try {
-				// Load the models from files and if an error happens
+				// Load the game from files and if an error happens
 				// display an appropriate message
-				stateModel.loadFromFile(stateFileName);
-				boardModel.loadFromFile(boardFileName);
+				engine.load(stateFileName, boardFileName);
 				view.setStatusLabel("Load successful.");
 			} catch (Exception exception) {
 				view.setStatusLabel("An error occured while loading or no save exists.");
@@ -164,10 +164,9 @@ public class BoardController implements ActionListener, Observer {
 			break;
 		case SAVE_BUTTON:
 			try {
-				// Save the models to files and if an error happens
+				// Save the game to files and if an error happens
 				// display an appropriate message
-				stateModel.saveToFile(stateFileName);
-				boardModel.saveToFile(boardFileName);
+				engine.save(stateFileName, boardFileName);
 				view.setStatusLabel("Save successful.");
 			} catch (IOException exception) {
 				view.setStatusLabel("An error occured while saving.");
@@ -184,7 +183,7 @@ public class BoardController implements ActionListener, Observer {
 			}
 			
 			if (success) {
-				stateModel.setState(GameState.START_STATE);
+				engine.goToStart();
 			}
 			break;
 		default:
@@ -205,10 +204,14 @@ public class BoardController implements ActionListener, Observer {
 			// If the model that was updated was the board model
 			// update the view with the new board model
 			view.drawModel(boardModel);
+		} else if (arg0 == engine) {
+			// The AI moved and passed along how much work it did
+			if (showStatistics) {
+				showStatistics((SearchStatistics) arg1);
+			}
 		} else if (arg0 == stateModel) {
 			// If the model that was updated was the state model
 			// update the view with the new state info
-			
 			GameState currentState = stateModel.getState();
 			if (panelMap.containsKey(currentState)) {
 				// If the panelMap contains info regarding which
@@ -227,24 +230,10 @@ public class BoardController implements ActionListener, Observer {
 				} else if (currentPlayer != PlayerColor.NONE) {
 					view.setTitleLabel(currentPlayer.toString() + "'s turn");
 				}
-				
-				// Check if the previous move was a winning move
-				PlayerColor winner = boardModel.getWinner();
-				// If there is no winner it is the next player's turn
-				if (winner != PlayerColor.NONE)  {
-					// If there is a winner go to the win state
-					stateModel.setState(GameState.WIN_STATE);
-				}
-				
-				// If there are no more empty spaces and there was no winner, there must be a draw
-				if (boardModel.getPieceCount(PlayerColor.NONE) == 0 && stateModel.getState() != GameState.WIN_STATE) {
-					stateModel.setState(GameState.DRAW_STATE);
-				}
 			} else if (currentState == GameState.WIN_STATE) {
 				// If a player won the game display a winning message
-				// The player who won is the player on the previous turn
-				view.setTitleLabel(currentPlayer.opponent().toString() + " won!");
-				// Highlight the winning connect four pieces
+				view.setTitleLabel(engine.getWinner().toString() + " won!");
+				// Highlight the pieces of the winning line
 				for (Position winPosition : boardModel.getWinningPieces()) {
 					view.highlightPiece(winPosition);
 				}
@@ -253,46 +242,8 @@ public class BoardController implements ActionListener, Observer {
 				view.setTitleLabel("Draw :(");
 			} else if (currentState == GameState.START_STATE) {
 				// If the state is reset to the start state
-				// reset the message and the board pieces
+				// reset the message
 				view.setTitleLabel("Welcome");
-				boardModel.reset();
-			}
-			
-			// If it's the AI's turn, figure out the next move and do it
-			// Run the AI on another thread to keep the GUI responsive
-			if (stateModel.getState() == GameState.PLAY_STATE && stateModel.getAIPlayer() == currentPlayer) {
-		    	SwingWorker<Integer, Object> worker = new SwingWorker<Integer, Object>() {
-
-		    		@Override
-		    		protected Integer doInBackground() throws Exception {
-		    			// Calculate the next move
-		    			ConnectFourAI ai = new ConnectFourAI(boardModel.copy());
-		    			long startTime = System.nanoTime();
-		    			int bestMove = ai.getBestMove(currentPlayer);
-		    			// Normalize the AI's turn to always take 1 second
-		    			long sleepTime = 1000000000 - (System.nanoTime() - startTime);
-		    			if (sleepTime > 0) {
-		    				try {
-		    					Thread.sleep(sleepTime / 1000000);
-		    				} catch (InterruptedException e) {}
-		    			}
-		    			
-		    			return bestMove;
-		    		}
-		    		
-		    		@Override
-		    		protected void done() {
-		    			// If the move has been calculated, do it
-		    			try {
-							boardModel.doMove(get(), currentPlayer);
-						} catch (Exception ignore) {
-						}
-		    			stateModel.nextTurn();
-		    		}
-		    		
-		    	};
-		    	// Run the AI thread
-		    	worker.execute();
 			}
 			
 			// Can clear the status if the state changes
@@ -300,16 +251,40 @@ public class BoardController implements ActionListener, Observer {
 		}
 	}
 	
+	/**
+	 * Show the statistics of the AI's last search. Once the game is
+	 * over the totals for the game and for every game since the
+	 * program started are shown instead.
+	 * @param statistics the statistics of the last search
+	 */
+	private void showStatistics(SearchStatistics statistics) {
+		if (stateModel.getState() == GameState.PLAY_STATE) {
+			view.setStatusLabel(statistics.toString());
+		} else {
+			SearchStatistics totalStatistics = engine.getTotalStatistics();
+			// The label only shows more than one line as html
+			view.setStatusLabel("<html>This game: " + engine.getGameStatistics().toString()
+					+ "<br>All " + totalStatistics.getSearchCount() + " moves: " + totalStatistics.toString() + "</html>");
+		}
+	}
+	
 	/**
 	 * The entry point of the application.
+	 * @param args optionally the width and height of the board, how many pieces in a row
+	 * it takes to win and false to hide how much work the AI did
 	 */
 	public static void main(String[] args) {
+		int width = (args.length > 0) ? Integer.parseInt(args[0]) : BoardModel.DEFAULT_WIDTH;
+		int height = (args.length > 1) ? Integer.parseInt(args[1]) : BoardModel.DEFAULT_HEIGHT;
+		int connectLength = (args.length > 2) ? Integer.parseInt(args[2]) : BoardModel.DEFAULT_CONNECT_LENGTH;
+		boolean showStatistics = (args.length > 3) ? Boolean.parseBoolean(args[3]) : true;
+		
 		// Create a new controller which in turn will
 		// start the game
 		
 		// It's actually used because the constructor sets everything up
 		@SuppressWarnings("unused")
-		BoardController bc = new BoardController();
+		BoardController bc = new BoardController(width, height, connectLength, showStatistics);
 	}
 
 }
@@ -4,26 +4,360 @@ import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Observable;
+import java.util.Random;
 
 /**
  * This class contains data and methods regarding the actual game board itself and any game pieces on it.
+ * The pieces are stored as bitboards. Each column uses GRID_HEIGHT + 1 bits, starting
+ * with the bottom row, and the extra bit on top of every column is always empty so
+ * that shifting a mask can never make a line wrap around into the next column.
+ * The board is normally 7 by 6 with four in a row to win, but any size
+ * whose bitboard fits in 64 bits and any length of line can be used.
  */
 public class BoardModel extends Observable {
-	private static final int GRID_WIDTH = 7;
-	private static final int GRID_HEIGHT = 6;
+	public static final int DEFAULT_WIDTH = 7;
+	public static final int DEFAULT_HEIGHT = 6;
+	public static final int DEFAULT_CONNECT_LENGTH = 4;
+	// The amount of bits a bitboard has room for
+	private static final int MAX_BITS = 64;
+	// A random number for every color and bit used to hash positions.
+	// The seed is fixed so a position always has the same hash
+	private static final long[][] ZOBRIST_KEYS = zobristKeys();
 	
-	private PlayerColor[][] pieceGrid;
+	private final int GRID_WIDTH;
+	private final int GRID_HEIGHT;
+	// How many pieces in a row it takes to win
+	private final int CONNECT_LENGTH;
+	
+	// The amount of bits each column takes up in a mask
+	private final int COLUMN_BITS;
+	// A mask with the bottom bit of every column set
+	private final long BOTTOM_MASK;
+	// A mask with every playable bit set
+	private final long BOARD_MASK;
+	// Every bit of the first column, including the one above the top
+	private final long COLUMN_MASK;
+	// How far to shift a bit to get to the next spot in a line:
+	// vertical, "\"-diagonal, horizontal and "/"-diagonal, leaving
+	// out directions a winning line doesn't fit in
+	private final int[] LINE_SHIFTS;
+	// The number of the spot in the mirrored column for every color and bit,
+	// used to hash the mirror image
+	private final long[][] MIRROR_ZOBRIST_KEYS;
+	
+	private long redMask;
+	private long blueMask;
+	// Every occupied spot, in a legal position this is the height of each column
+	private long occupiedMask;
+	
+	// The row, counting up from the bottom, that the next piece dropped in each column lands in
+	private int[] columnHeights;
+	private int redCount;
+	private int blueCount;
+	
+	// The spot and color of the last dropped piece, the bit is 0 if it is unknown
+	private long lastMoveBit;
+	private PlayerColor lastMoveColor;
+	
+	// The hash of the position and of its mirror image, kept up to date with every change
+	private long hash;
+	private long mirrorHash;
 	
 	/**
 	 * Constructor for BoardModel that initializes an empty game board.
 	 */
 	public BoardModel() {
-		pieceGrid = new PlayerColor[GRID_WIDTH][GRID_HEIGHT];
+		this(DEFAULT_WIDTH, DEFAULT_HEIGHT, DEFAULT_CONNECT_LENGTH);
+	}
+	
+	/**
+	 * Constructor for BoardModel that initializes an empty game board of any size.
+	 * The board has to fit in a bitboard, so the width times one more than the
+	 * height can't be more than 64.
+	 * @param width the amount of columns
+	 * @param height the amount of rows
+	 * @param connectLength how many pieces in a row it takes to win
+	 */
+	public BoardModel(int width, int height, int connectLength) {
+		if (width < 1 || height < 1 || width * (height + 1) > MAX_BITS) {
+			throw new IllegalArgumentException("A " + width + " by " + height + " board doesn't fit in a bitboard");
+		}
+		if (connectLength < 2 || connectLength > Math.max(width, height)) {
+			throw new IllegalArgumentException("Can't connect " + connectLength + " on a " + width + " by " + height + " board");
+		}
+		GRID_WIDTH = width;
+		GRID_HEIGHT = height;
+		CONNECT_LENGTH = connectLength;
+		COLUMN_BITS = GRID_HEIGHT + 1;
+		
+		long bottom = 0;
+		for (int x = 0; x < GRID_WIDTH; x++) {
+			bottom |= 1L << (x * COLUMN_BITS);
+		}
+		BOTTOM_MASK = bottom;
+		BOARD_MASK = bottom * ((1L << GRID_HEIGHT) - 1);
+		COLUMN_MASK = (1L << COLUMN_BITS) - 1;
+		LINE_SHIFTS = lineShifts();
+		MIRROR_ZOBRIST_KEYS = mirrorZobristKeys();
+		
+		columnHeights = new int[GRID_WIDTH];
 		reset();
 	}
 	
+	/**
+	 * Constructor for BoardModel that starts with the pieces of a snapshot.
+	 * The board is the same size as the one the snapshot was taken of.
+	 * @param snapshot the pieces to start with
+	 */
+	public BoardModel(BoardSnapshot snapshot) {
+		this(snapshot.getGridWidth(), snapshot.getGridHeight(), snapshot.getConnectLength());
+		setState(snapshot);
+	}
+	
+	/**
+	 * Find the directions a winning line fits in on the board. Leaving out the
+	 * rest also makes sure a line is never shifted past the end of a bitboard.
+	 * @return how far to shift a bit to get to the next spot in each direction
+	 */
+	private int[] lineShifts() {
+		boolean vertical = GRID_HEIGHT >= CONNECT_LENGTH;
+		boolean horizontal = GRID_WIDTH >= CONNECT_LENGTH;
+		int[] shifts = new int[4];
+		int count = 0;
+		if (vertical)
+			shifts[count++] = 1;
+		if (vertical && horizontal)
+			shifts[count++] = COLUMN_BITS - 1;
+		if (horizontal)
+			shifts[count++] = COLUMN_BITS;
+		if (vertical && horizontal)
+			shifts[count++] = COLUMN_BITS + 1;
+		return Arrays.copyOf(shifts, count);
+	}
+	
+	/**
+	 * Reverse the order of the columns of a bitboard.
+	 * @param mask the bitboard
+	 * @return the bitboard of the mirror image
+	 */
+	private long mirrorMask(long mask) {
+		long mirror = 0;
+		for (int x = 0; x < GRID_WIDTH; x++) {
+			mirror |= ((mask >>> (x * COLUMN_BITS)) & COLUMN_MASK) << ((GRID_WIDTH - 1 - x) * COLUMN_BITS);
+		}
+		return mirror;
+	}
+	
+	/**
+	 * Make the random numbers used to hash positions, one for every color and bit
+	 * a bitboard can have, so boards of every size can use them.
+	 * @return the numbers, indexed by color (blue then red) and bit
+	 */
+	private static long[][] zobristKeys() {
+		Random random = new Random(0x5EEDC4L);
+		long[][] keys = new long[2][MAX_BITS];
+		for (long[] colorKeys : keys) {
+			for (int i = 0; i < colorKeys.length; i++) {
+				colorKeys[i] = random.nextLong();
+			}
+		}
+		return keys;
+	}
+	
+	/**
+	 * Make the random numbers used to hash the mirror image of positions.
+	 * The number of a bit is the number of the same row in the mirrored column.
+	 * @return the numbers, indexed by color (blue then red) and bit
+	 */
+	private long[][] mirrorZobristKeys() {
+		long[][] keys = new long[2][GRID_WIDTH * COLUMN_BITS];
+		for (int color = 0; color < keys.length; color++) {
+			for (int x = 0; x < GRID_WIDTH; x++) {
+				for (int row = 0; row < COLUMN_BITS; row++) {
+					keys[color][x * COLUMN_BITS + row] = ZOBRIST_KEYS[color][(GRID_WIDTH - 1 - x) * COLUMN_BITS + row];
+				}
+			}
+		}
+		return keys;
+	}
+	
+	/**
+	 * Add or take away a piece from both hashes.
+	 * @param bit the bit of the piece
+	 * @param color the color of the piece, which must not be NONE
+	 */
+	private void hashPiece(long bit, PlayerColor color) {
+		int index = Long.numberOfTrailingZeros(bit);
+		int colorIndex = (color == PlayerColor.RED) ? 1 : 0;
+		hash ^= ZOBRIST_KEYS[colorIndex][index];
+		mirrorHash ^= MIRROR_ZOBRIST_KEYS[colorIndex][index];
+	}
+	
+	/**
+	 * Calculate both hashes from scratch.
+	 */
+	private void rehash() {
+		hash = hashMasks(redMask, blueMask, ZOBRIST_KEYS);
+		mirrorHash = hashMasks(redMask, blueMask, MIRROR_ZOBRIST_KEYS);
+	}
+	
+	/**
+	 * Calculate the hash of the pieces in two bitboards.
+	 * @param redMask the red pieces
+	 * @param blueMask the blue pieces
+	 * @param keys the random numbers of every color and bit
+	 * @return the hash
+	 */
+	private static long hashMasks(long redMask, long blueMask, long[][] keys) {
+		long result = 0;
+		for (long bits = redMask; bits != 0; bits &= bits - 1) {
+			result ^= keys[1][Long.numberOfTrailingZeros(bits)];
+		}
+		for (long bits = blueMask; bits != 0; bits &= bits - 1) {
+			result ^= keys[0][Long.numberOfTrailingZeros(bits)];
+		}
+		return result;
+	}
+	
+	/**
+	 * Find the bit used to store the given spot on the board.
+	 * Row 0 is the top of the board but the bits start at the bottom.
+	 * @param x the column of the spot
+	 * @param y the row of the spot
+	 * @return a mask with only the bit of that spot set
+	 */
+	private long cellBit(int x, int y) {
+		return 1L << (x * COLUMN_BITS + GRID_HEIGHT - 1 - y);
+	}
+	
+	/**
+	 * Find the mask containing every bit of a column, including the empty bit on top.
+	 * @param column the column
+	 * @return the mask of that column
+	 */
+	private long columnMask(int column) {
+		return ((1L << COLUMN_BITS) - 1) << (column * COLUMN_BITS);
+	}
+	
+	/**
+	 * Find the color of a piece straight from the masks.
+	 * @param x the column of the spot
+	 * @param y the row of the spot
+	 * @return the color of that spot
+	 */
+	private PlayerColor pieceAt(int x, int y) {
+		long bit = cellBit(x, y);
+		if ((redMask & bit) != 0)
+			return PlayerColor.RED;
+		else if ((blueMask & bit) != 0)
+			return PlayerColor.BLUE;
+		else
+			return PlayerColor.NONE;
+	}
+	
+	/**
+	 * Set the color of a spot straight in the masks, without notifying observers.
+	 * @param x the column of the spot
+	 * @param y the row of the spot
+	 * @param color the new color of that spot
+	 */
+	private void setPieceAt(int x, int y, PlayerColor color) {
+		long bit = cellBit(x, y);
+		lastMoveBit = 0;
+		
+		// Take away whatever piece was there before
+		if ((redMask & bit) != 0) {
+			redCount--;
+			hashPiece(bit, PlayerColor.RED);
+		} else if ((blueMask & bit) != 0) {
+			blueCount--;
+			hashPiece(bit, PlayerColor.BLUE);
+		}
+		redMask &= ~bit;
+		blueMask &= ~bit;
+		occupiedMask &= ~bit;
+		
+		if (color == PlayerColor.RED) {
+			redMask |= bit;
+			occupiedMask |= bit;
+			redCount++;
+			hashPiece(bit, color);
+		} else if (color == PlayerColor.BLUE) {
+			blueMask |= bit;
+			occupiedMask |= bit;
+			blueCount++;
+			hashPiece(bit, color);
+		}
+		updateColumnHeight(x);
+	}
+	
+	/**
+	 * Recalculate where the next piece dropped in a column will land.
+	 * @param column the column that changed
+	 */
+	private void updateColumnHeight(int column) {
+		// Adding the bottom bit of the column carries through all the
+		// filled spots and stops at the lowest empty one, which is the
+		// empty bit on top if the column is full
+		int columnStart = column * COLUMN_BITS;
+		long empty = (occupiedMask + (1L << columnStart)) & ~occupiedMask & columnMask(column);
+		columnHeights[column] = Long.numberOfTrailingZeros(empty) - columnStart;
+	}
+	
+	/**
+	 * Check if a mask of pieces contains a connect four, or however many
+	 * in a row it takes to win. Every direction is checked for the whole
+	 * board at once by shifting the mask.
+	 * @param mask the pieces of one player
+	 * @return true if there are enough pieces in a row
+	 */
+	boolean hasConnection(long mask) {
+		for (int shift : LINE_SHIFTS) {
+			// Each bit left is the start of a line as long as the amount of
+			// pieces checked so far, which doubles each time until it is enough
+			long lines = mask;
+			int length = 1;
+			while (length * 2 <= CONNECT_LENGTH) {
+				lines &= lines >>> (length * shift);
+				length *= 2;
+			}
+			if (length < CONNECT_LENGTH) {
+				lines &= lines >>> ((CONNECT_LENGTH - length) * shift);
+			}
+			if (lines != 0)
+				return true;
+		}
+		return false;
+	}
 	
+	/**
+	 * Check if a piece is part of a connect four, or however many in a row
+	 * it takes to win. Only the lines going through that piece are looked at.
+	 * @param mask the pieces of one player
+	 * @param bit the bit of the piece to check, it must be in the mask
+	 * @return true if the piece is in a line that is long enough
+	 */
+	private boolean isConnected(long mask, long bit) {
+		for (int shift : LINE_SHIFTS) {
+			// Count the pieces in a row on both sides of the piece
+			int count = 1;
+			long probe = bit << shift;
+			while ((mask & probe) != 0) {
+				count++;
+				probe <<= shift;
+			}
+			probe = bit >>> shift;
+			while ((mask & probe) != 0) {
+				count++;
+				probe >>>= shift;
+			}
+			if (count >= CONNECT_LENGTH)
+				return true;
+		}
+		return false;
+	}
 
 	/**
 	 * Find how wide the board is in terms of game piece spaces.
@@ -40,6 +374,14 @@ public class BoardModel extends Observable {
 	public int getGridHeight() {
 		return GRID_HEIGHT;
 	}
+	
+	/**
+	 * Find how many pieces in a row it takes to win.
+	 * @return the length of a winning line
+	 */
+	public int getConnectLength() {
+		return CONNECT_LENGTH;
+	}
 
 	/**
 	 * Set the given position on the board to the given color.
@@ -47,7 +389,7 @@ public class BoardModel extends Observable {
 	 * @param color the color to set that position to
 	 */
 	public void setGridPiece(Position position, PlayerColor color) {
-		pieceGrid[position.x][position.y] = color;
+		setPieceAt(position.x, position.y, color);
 		setChanged();
 		notifyObservers();
 	}
@@ -58,7 +400,63 @@ public class BoardModel extends Observable {
 	 * @return return the color of of that position
 	 */
 	public PlayerColor getGridPiece(Position position) {
-		return pieceGrid[position.x][position.y];
+		return pieceAt(position.x, position.y);
+	}
+	
+	/**
+	 * Find what color piece, if any, is at the given spot on the board.
+	 * This is the same as {@link #getGridPiece(Position)} without needing a {@link Position}.
+	 * @param x the column of the spot
+	 * @param y the row of the spot, 0 being the top
+	 * @return the color of that spot
+	 */
+	public PlayerColor getGridPiece(int x, int y) {
+		return pieceAt(x, y);
+	}
+	
+	/**
+	 * Find how many spots are on the board. Cell indices go from 0 up to this amount.
+	 * @return the amount of spots on the board
+	 */
+	public int getCellCount() {
+		return GRID_WIDTH * GRID_HEIGHT;
+	}
+	
+	/**
+	 * Turn a spot on the board into a single number that can be used to index arrays.
+	 * @param x the column of the spot
+	 * @param y the row of the spot, 0 being the top
+	 * @return the cell index of that spot
+	 */
+	public int getCellIndex(int x, int y) {
+		return x * GRID_HEIGHT + y;
+	}
+	
+	/**
+	 * Find the column of a cell index.
+	 * @param cell the cell index
+	 * @return the column of that cell
+	 */
+	public int getCellX(int cell) {
+		return cell / GRID_HEIGHT;
+	}
+	
+	/**
+	 * Find the row of a cell index.
+	 * @param cell the cell index
+	 * @return the row of that cell, 0 being the top
+	 */
+	public int getCellY(int cell) {
+		return cell % GRID_HEIGHT;
+	}
+	
+	/**
+	 * Find what color piece, if any, is at the given cell.
+	 * @param cell the cell index of the spot
+	 * @return the color of that spot
+	 */
+	public PlayerColor getCellPiece(int cell) {
+		return pieceAt(cell / GRID_HEIGHT, cell % GRID_HEIGHT);
 	}
 	
 	/**
@@ -67,12 +465,11 @@ public class BoardModel extends Observable {
 	 */
 	public Position[] getErrorPositions() {
 		
+		//A piece is floating if the spot below it is empty
+		long floating = occupiedMask & ~(occupiedMask << 1) & ~BOTTOM_MASK;
+		
 		//Find the amount of error positions
-		int errorAmt = 0;
-		for (int x = 0; x < GRID_WIDTH; x++)
-			for (int y = 0; y < GRID_HEIGHT-1; y++)
-				if (pieceGrid[x][y] != PlayerColor.NONE && pieceGrid[x][y+1] == PlayerColor.NONE)
-					errorAmt++;
+		int errorAmt = Long.bitCount(floating);
 		
 		//Return null if no error positions were found
 		if (errorAmt == 0)
@@ -83,8 +480,8 @@ public class BoardModel extends Observable {
 		int i = 0;
 		for (int x = 0; x < GRID_WIDTH; x++)
 			for (int y = 0; y < GRID_HEIGHT-1; y++)
-				if (pieceGrid[x][y] != PlayerColor.NONE && pieceGrid[x][y+1] == PlayerColor.NONE)
-					errorPos[i++] = new Position(x, y);
+				if ((floating & cellBit(x, y)) != 0)
+					errorPos[i++] = Position.of(x, y);
 		return errorPos;
 	}
 	
@@ -93,33 +490,73 @@ public class BoardModel extends Observable {
 	 * @return the color of the first player found with a connect four, or NONE if there is no winner
 	 */
 	public PlayerColor getWinner() {
-		Position[] winner = getWinningPieces();
-		if(winner[0] == null)
+		boolean redWon = hasConnection(redMask);
+		boolean blueWon = hasConnection(blueMask);
+		
+		if (redWon && blueWon) {
+			// Only possible on an edited board, use the same order as getWinningPieces
+			Position[] winner = getWinningPieces();
+			return pieceAt(winner[0].x, winner[0].y);
+		} else if (redWon)
+			return PlayerColor.RED;
+		else if (blueWon)
+			return PlayerColor.BLUE;
+		else
+			return PlayerColor.NONE;
+	}
+	
+	/**
+	 * Determine if the last piece dropped by {@link #doMove(int, PlayerColor)} or
+	 * {@link #doTemporaryMove(int, PlayerColor)} made a connect four. This only checks the
+	 * lines going through that piece so it is a lot cheaper than {@link #getWinner()}.
+	 * Pieces set any other way, or a connect four that was already there, are not found.
+	 * @return the color of the last dropped piece if it won, or NONE otherwise
+	 */
+	public PlayerColor getLastMoveWinner() {
+		if (lastMoveBit == 0)
 			return PlayerColor.NONE;
+		
+		long mask = (lastMoveColor == PlayerColor.RED) ? redMask : blueMask;
+		if (isConnected(mask, lastMoveBit))
+			return lastMoveColor;
 		else
-			return pieceGrid[winner[0].x][winner[0].y];
+			return PlayerColor.NONE;
+	}
+	
+	/**
+	 * Find where the last piece dropped by {@link #doMove(int, PlayerColor)} or
+	 * {@link #doTemporaryMove(int, PlayerColor)} landed.
+	 * @return the cell index of the piece, or -1 if it isn't known
+	 */
+	public int getLastMoveCell() {
+		if (lastMoveBit == 0)
+			return -1;
+		
+		int bitIndex = Long.numberOfTrailingZeros(lastMoveBit);
+		return getCellIndex(bitIndex / COLUMN_BITS, GRID_HEIGHT - 1 - bitIndex % COLUMN_BITS);
 	}
 	
 	/**
-	 * Determine the locations of the pieces of the winning connect four, if there is one.
-	 * @return an array containing the locations of the four winning pieces, or an empty array (all elements are null) if there is no winner
+	 * Determine the locations of the pieces of the winning line, if there is one.
+	 * This looks at the whole board so it should only be used when the actual pieces are needed.
+	 * @return an array containing the locations of the winning pieces, or an empty array (all elements are null) if there is no winner
 	 */
 	public Position[] getWinningPieces(){
 		
 		PlayerColor checkColor = PlayerColor.NONE;
-		Position[] winPieces = new Position[4];
+		Position[] winPieces = new Position[CONNECT_LENGTH];
 
 		//Check the leftmost spots of all possible horizontal connect fours
-		for (int x = 0; x < GRID_WIDTH-3; x++)				//All possible starting points
+		for (int x = 0; x < GRID_WIDTH-(CONNECT_LENGTH-1); x++)				//All possible starting points
 			for (int y = 0; y < GRID_HEIGHT; y++)
-				if (pieceGrid[x][y] != PlayerColor.NONE){	//Check for a red or blue piece in that spot
-					checkColor = pieceGrid[x][y];				//Use 'checkColor' to hold the color of this potential win
-					winPieces[0] = new Position(x, y);
-					for (int i = 1; i < 4; i++){				//Check if the other 3 spots needed are the same color
-						winPieces[i] = new Position(x+i, y);		//Record the location of each spot checked
-						if (pieceGrid[x+i][y] != checkColor){
+				if (pieceAt(x, y) != PlayerColor.NONE){	//Check for a red or blue piece in that spot
+					checkColor = pieceAt(x, y);				//Use 'checkColor' to hold the color of this potential win
+					winPieces[0] = Position.of(x, y);
+					for (int i = 1; i < CONNECT_LENGTH; i++){				//Check if the other spots needed are the same color
+						winPieces[i] = Position.of(x+i, y);		//Record the location of each spot checked
+						if (pieceAt(x+i, y) != checkColor){
 							checkColor = PlayerColor.NONE;			//If not set 'checkColor' back to none and stop checking this one
-							winPieces = new Position[4];			//Clear any positions recorded in 'winPieces'
+							winPieces = new Position[CONNECT_LENGTH];			//Clear any positions recorded in 'winPieces'
 							break;
 						}
 					}
@@ -129,15 +566,15 @@ public class BoardModel extends Observable {
 		
 		//Check the top spots of all possible vertical connect fours
 		for (int x = 0; x < GRID_WIDTH; x++)
-			for (int y = 0; y < GRID_HEIGHT-3; y++)
-				if (pieceGrid[x][y] != PlayerColor.NONE){
-					checkColor = pieceGrid[x][y];
-					winPieces[0] = new Position(x, y);
-					for (int i = 1; i < 4; i++){
-						winPieces[i] = new Position(x, y+i);
-						if (pieceGrid[x][y+i] != checkColor){
+			for (int y = 0; y < GRID_HEIGHT-(CONNECT_LENGTH-1); y++)
+				if (pieceAt(x, y) != PlayerColor.NONE){
+					checkColor = pieceAt(x, y);
+					winPieces[0] = Position.of(x, y);
+					for (int i = 1; i < CONNECT_LENGTH; i++){
+						winPieces[i] = Position.of(x, y+i);
+						if (pieceAt(x, y+i) != checkColor){
 							checkColor = PlayerColor.NONE;
-							winPieces = new Position[4];
+							winPieces = new Position[CONNECT_LENGTH];
 							break;
 						}
 					}
@@ -146,16 +583,16 @@ public class BoardModel extends Observable {
 				}
 		
 		//Check the top-left spots of all possible "\"-diagonal connect fours
-		for (int x = 0; x < GRID_WIDTH-3; x++)
-			for (int y = 0; y < GRID_HEIGHT-3; y++)
-				if (pieceGrid[x][y] != PlayerColor.NONE){
-					checkColor = pieceGrid[x][y];
-					winPieces[0] = new Position(x, y);
-					for (int i = 1; i < 4; i++){
-						winPieces[i] = new Position(x+i, y+i);
-						if (pieceGrid[x+i][y+i] != checkColor){
+		for (int x = 0; x < GRID_WIDTH-(CONNECT_LENGTH-1); x++)
+			for (int y = 0; y < GRID_HEIGHT-(CONNECT_LENGTH-1); y++)
+				if (pieceAt(x, y) != PlayerColor.NONE){
+					checkColor = pieceAt(x, y);
+					winPieces[0] = Position.of(x, y);
+					for (int i = 1; i < CONNECT_LENGTH; i++){
+						winPieces[i] = Position.of(x+i, y+i);
+						if (pieceAt(x+i, y+i) != checkColor){
 							checkColor = PlayerColor.NONE;
-							winPieces = new Position[4];
+							winPieces = new Position[CONNECT_LENGTH];
 							break;
 						}	
 					}
@@ -164,16 +601,16 @@ public class BoardModel extends Observable {
 				}
 		
 		//Check the top-right of all possible "/"-diagonal connect fours
-		for (int x = 3; x < GRID_WIDTH; x++)
-			for (int y = 0; y < GRID_HEIGHT-3; y++)
-				if (pieceGrid[x][y] != PlayerColor.NONE){
-					checkColor = pieceGrid[x][y];
-					winPieces[0] = new Position(x, y);
-					for (int i = 1; i < 4; i++){
-						winPieces[i] = new Position(x-i, y+i);
-						if (pieceGrid[x-i][y+i] != checkColor){
+		for (int x = CONNECT_LENGTH-1; x < GRID_WIDTH; x++)
+			for (int y = 0; y < GRID_HEIGHT-(CONNECT_LENGTH-1); y++)
+				if (pieceAt(x, y) != PlayerColor.NONE){
+					checkColor = pieceAt(x, y);
+					winPieces[0] = Position.of(x, y);
+					for (int i = 1; i < CONNECT_LENGTH; i++){
+						winPieces[i] = Position.of(x-i, y+i);
+						if (pieceAt(x-i, y+i) != checkColor){
 							checkColor = PlayerColor.NONE;
-							winPieces = new Position[4];
+							winPieces = new Position[CONNECT_LENGTH];
 							break;
 						}
 					}
@@ -189,14 +626,248 @@ public class BoardModel extends Observable {
 	 * @return the number of pieces found for that player
 	 */
 	public int getPieceCount(PlayerColor color) {
-		int count = 0;
+		switch (color) {
+		case RED: return redCount;
+		case BLUE: return blueCount;
+		default: return GRID_WIDTH * GRID_HEIGHT - redCount - blueCount;
+		}
+	}
+	
+	/**
+	 * Get a number that identifies the position on the board. Every position that
+	 * can be reached by dropping pieces has a different key, but positions with
+	 * floating pieces could share a key with another position.
+	 * @return the key of the current position
+	 */
+	public long getPositionKey() {
+		return getPositionKey(PlayerColor.RED);
+	}
+	
+	/**
+	 * Get a number that identifies the position on the board from the point of
+	 * view of one player. Swapping the colors of every piece and asking for the
+	 * other player gives the same key.
+	 * @param player the player whose pieces are used to make the key
+	 * @return the key of the current position
+	 */
+	public long getPositionKey(PlayerColor player) {
+		// Adding the bottom mask to the occupied spots leaves a single bit on top
+		// of every column, which marks the height, and the player's pieces below it
+		return getPlayerMask(player) + occupiedMask + BOTTOM_MASK;
+	}
+	
+	/**
+	 * Get the key the mirror image of the position on the board would have, which
+	 * is the position with the columns in reverse order.
+	 * @param player the player whose pieces are used to make the key
+	 * @return the key of the mirrored position
+	 */
+	public long getMirrorPositionKey(PlayerColor player) {
+		return mirrorMask(getPlayerMask(player)) + mirrorMask(occupiedMask) + BOTTOM_MASK;
+	}
+	
+	/**
+	 * Check if the position on the board is the same as its mirror image.
+	 * Mirrored moves are equally good in a symmetric position.
+	 * @return true if every column matches the column across from it
+	 */
+	public boolean isSymmetric() {
+		return mirrorMask(redMask) == redMask && mirrorMask(blueMask) == blueMask;
+	}
+	
+	/**
+	 * Find the column across from a column, which is where a move ends up
+	 * in the mirror image of the board.
+	 * @param column the column
+	 * @return the mirrored column
+	 */
+	public int getMirrorColumn(int column) {
+		return GRID_WIDTH - 1 - column;
+	}
+	
+	/**
+	 * Get a hash of the position on the board. It is kept up to date with
+	 * every change so getting it costs nothing. Different positions can
+	 * have the same hash, but it is very unlikely.
+	 * @return the hash of the current position
+	 */
+	public long getHash() {
+		return hash;
+	}
+	
+	/**
+	 * Get the hash of the mirror image of the position on the board,
+	 * which is the hash the position would have with the columns in reverse order.
+	 * @return the hash of the mirrored position
+	 */
+	public long getMirrorHash() {
+		return mirrorHash;
+	}
+	
+	/**
+	 * Get a hash that is the same for a position and its mirror image, so
+	 * anything stored for one of them can be found for the other.
+	 * @return the smaller of the hash and the mirrored hash
+	 */
+	public long getCanonicalHash() {
+		return Math.min(hash, mirrorHash);
+	}
+	
+	/**
+	 * Check if the canonical hash is the hash of the mirror image, which
+	 * means moves stored under it have to be mirrored to be used on this board.
+	 * @return true if the mirrored hash is the canonical hash
+	 */
+	public boolean isMirrorCanonical() {
+		return mirrorHash < hash;
+	}
+	
+	/**
+	 * Get the bitboard of one player's pieces. The bits are laid out
+	 * column by column, each column using one more bit than the height
+	 * of the board and starting at the bottom.
+	 * @param color the player
+	 * @return the mask of that player's pieces
+	 */
+	long getPlayerMask(PlayerColor color) {
+		return (color == PlayerColor.RED) ? redMask : blueMask;
+	}
+	
+	/**
+	 * Get the bitboard of every occupied spot, laid out the same way as
+	 * {@link #getPlayerMask(PlayerColor)}.
+	 * @return the mask of every piece
+	 */
+	long getOccupiedMask() {
+		return occupiedMask;
+	}
+	
+	/**
+	 * Find every empty spot that would complete a winning line for a player,
+	 * including spots that can't be played yet because the spot below is empty.
+	 * @param color the player
+	 * @return a mask of the spots, laid out the same way as {@link #getPlayerMask(PlayerColor)}
+	 */
+	long getThreatMask(PlayerColor color) {
+		return getThreatMask(getPlayerMask(color), occupiedMask);
+	}
+	
+	/**
+	 * Find every empty spot that would complete a line for the pieces in a bitboard.
+	 * This only looks at the masks it is given, so anything searching positions
+	 * of the same size of board can use it, even from more than one thread.
+	 * @param position the pieces of one player
+	 * @param occupied every occupied spot
+	 * @return a mask of the spots, including ones that can't be played yet
+	 */
+	long getThreatMask(long position, long occupied) {
+		if (CONNECT_LENGTH == 4 && LINE_SHIFTS.length == 4) {
+			return getFourThreatMask(position) & (BOARD_MASK ^ occupied);
+		}
 		
-		for (int x = 0; x < GRID_WIDTH; x++)
-			for (int y = 0; y < GRID_HEIGHT; y++)
-				if (pieceGrid[x][y] == color)
-					count++;
+		long result = 0;
+		for (int shift : LINE_SHIFTS) {
+			if (shift == 1) {
+				// Vertical, which can only be completed on top
+				long below = -1L;
+				for (int length = 1; length < CONNECT_LENGTH; length++) {
+					below &= position << length;
+				}
+				result |= below;
+				continue;
+			}
+			
+			// The other lines can have the empty spot anywhere in them, so a spot
+			// completes a line if the pieces before it and after it add up to enough
+			long before = -1L;
+			for (int length = 0; length < CONNECT_LENGTH; length++) {
+				if (length > 0) {
+					before &= position << (length * shift);
+				}
+				long line = before;
+				for (int after = 1; after < CONNECT_LENGTH - length; after++) {
+					line &= position >>> (after * shift);
+				}
+				result |= line;
+			}
+		}
 		
-		return count; 
+		return result & (BOARD_MASK ^ occupied);
+	}
+	
+	/**
+	 * Find every spot that would complete a connect four, the same as
+	 * {@link #getThreatMask(long, long)} but with every shift written out
+	 * since the search asks for this on every node of the normal game.
+	 * @param position the pieces of the player
+	 * @return a mask of the spots, including occupied ones
+	 */
+	private long getFourThreatMask(long position) {
+		// Vertical, which can only be completed on top
+		long result = (position << 1) & (position << 2) & (position << 3);
+		
+		// The other lines can have the empty spot at any of the four places
+		for (int i = 1; i < LINE_SHIFTS.length; i++) {
+			int shift = LINE_SHIFTS[i];
+			long pair = (position << shift) & (position << (2 * shift));
+			result |= pair & (position << (3 * shift));
+			result |= pair & (position >>> shift);
+			pair = (position >>> shift) & (position >>> (2 * shift));
+			result |= pair & (position << shift);
+			result |= pair & (position >>> (3 * shift));
+		}
+		return result;
+	}
+	
+	/**
+	 * Find the spots the next piece dropped in each column would land in.
+	 * @return a mask of the spots, laid out the same way as {@link #getPlayerMask(PlayerColor)}
+	 */
+	long getPlayableMask() {
+		return (occupiedMask + BOTTOM_MASK) & BOARD_MASK;
+	}
+	
+	/**
+	 * Find the column a spot is in.
+	 * @param spot a mask with only the bit of the spot set
+	 * @return the column
+	 */
+	int getSpotColumn(long spot) {
+		return Long.numberOfTrailingZeros(spot) / COLUMN_BITS;
+	}
+	
+	/**
+	 * Find a move that wins the game right away for a player.
+	 * @param color the player
+	 * @return the column of the move, or -1 if there isn't one
+	 */
+	public int getWinningMove(PlayerColor color) {
+		long wins = getThreatMask(color) & getPlayableMask();
+		return (wins == 0) ? -1 : getSpotColumn(wins);
+	}
+	
+	/**
+	 * Find the move a player has to make to stop the opponent from
+	 * winning with their next move.
+	 * @param color the player
+	 * @return the column of the move, or -1 if the opponent can't win with their
+	 * next move or can win in more than one place so it can't be stopped
+	 */
+	public int getBlockingMove(PlayerColor color) {
+		long forced = getThreatMask(color.opponent()) & getPlayableMask();
+		if (forced == 0 || (forced & (forced - 1)) != 0) {
+			return -1;
+		}
+		return getSpotColumn(forced);
+	}
+	
+	/**
+	 * Find how much room is left in a column.
+	 * @param column the column to check
+	 * @return the amount of spots from the lowest empty one up to the top, or 0 if the column is full
+	 */
+	public int getColumnSpace(int column) {
+		return GRID_HEIGHT - columnHeights[column];
 	}
 
 	/**
@@ -204,9 +875,9 @@ public class BoardModel extends Observable {
 	 * @return which color has more pieces, or NONE if they both have the same amount
 	 */
 	public PlayerColor whoHasMorePieces(){
-		if (getPieceCount(PlayerColor.RED) > getPieceCount(PlayerColor.BLUE))
+		if (redCount > blueCount)
 			return PlayerColor.RED;
-		else if (getPieceCount(PlayerColor.RED) < getPieceCount(PlayerColor.BLUE))
+		else if (redCount < blueCount)
 			return PlayerColor.BLUE;
 		else
 			return PlayerColor.NONE;
@@ -217,7 +888,7 @@ public class BoardModel extends Observable {
 	 * @return which color has more pieces by at least 2, or NONE if the difference is less than 2
 	 */
 	public PlayerColor getErrorColor(){
-		if (Math.abs(getPieceCount(PlayerColor.RED) - getPieceCount(PlayerColor.BLUE)) > 1)
+		if (Math.abs(redCount - blueCount) > 1)
 			return whoHasMorePieces();
 		else
 			return PlayerColor.NONE;
@@ -249,18 +920,31 @@ public class BoardModel extends Observable {
 	 * @return true if the piece fit and false if the column is full
 	 */
 	private boolean dropPiece(int column, PlayerColor color) {
-		boolean success = false;
-		// This works by trying every spot starting from the bottom
-		// and placing the piece in the first empty spot it finds
-		for (int row = GRID_HEIGHT - 1; row >= 0; row--) {
-			if (pieceGrid[column][row] == PlayerColor.NONE) {
-				pieceGrid[column][row] = color;
-				success = true;
-				break;
-			}
+		int row = columnHeights[column];
+		if (row == GRID_HEIGHT) {
+			return false;
 		}
 		
-		return success;
+		long bit = 1L << (column * COLUMN_BITS + row);
+		occupiedMask |= bit;
+		if (color == PlayerColor.RED) {
+			redMask |= bit;
+			redCount++;
+		} else {
+			blueMask |= bit;
+			blueCount++;
+		}
+		hashPiece(bit, color);
+		lastMoveBit = bit;
+		lastMoveColor = color;
+		
+		// Usually the piece lands on top of the others, but an edited
+		// board could have floating pieces above it
+		if ((occupiedMask & (bit << 1)) == 0)
+			columnHeights[column] = row + 1;
+		else
+			updateColumnHeight(column);
+		return true;
 	}
 	
 	/**
@@ -297,14 +981,28 @@ public class BoardModel extends Observable {
 	 * @param column the column of the move to undo
 	 */
 	public void undoTemporaryMove(int column) {
-		// This works by trying every spot starting from the top
-		// and removing the first piece it finds
-		for (int row = 0; row < GRID_HEIGHT; row++) {
-			if (pieceGrid[column][row] != PlayerColor.NONE) {
-				pieceGrid[column][row] = PlayerColor.NONE;
-				break;
-			}
+		// The top piece of the column is its highest occupied bit
+		long bit = Long.highestOneBit(occupiedMask & columnMask(column));
+		if (bit == 0)
+			return;
+		if ((redMask & bit) != 0) {
+			redCount--;
+			hashPiece(bit, PlayerColor.RED);
+		} else if ((blueMask & bit) != 0) {
+			blueCount--;
+			hashPiece(bit, PlayerColor.BLUE);
 		}
+		occupiedMask &= ~bit;
+		redMask &= ~bit;
+		blueMask &= ~bit;
+		// The move before this one isn't known anymore
+		lastMoveBit = 0;
+		
+		// If the piece was below the lowest empty spot that is where the next one
+		// will land, otherwise it was floating and the lowest empty spot is the same
+		int row = Long.numberOfTrailingZeros(bit) - column * COLUMN_BITS;
+		if (row < columnHeights[column])
+			columnHeights[column] = row;
 	}
 	
 	/**
@@ -314,16 +1012,7 @@ public class BoardModel extends Observable {
 	 * @throws IOException
 	 */
 	public void saveToFile(String fileName) throws IOException {
-		DataOutputStream outStream = new DataOutputStream(new FileOutputStream(fileName, false));
-		// There are less than 255 colors for the player to be
-		// so it should be safe to store it in a byte
-		for (int x = 0; x < GRID_WIDTH; x++) {
-			for (int y = 0; y < GRID_HEIGHT; y++) {
-				outStream.writeByte(pieceGrid[x][y].ordinal());
-			}
-		}
-		
-		outStream.close();
+		saveSnapshot(snapshot(), fileName);
 	}
 	
 	/**
@@ -333,32 +1022,145 @@ public class BoardModel extends Observable {
 	 * @throws IOException
 	 */
 	public void loadFromFile(String fileName) throws IOException {
+		restore(loadSnapshot(fileName));
+	}
+	
+	/**
+	 * Store the pieces of a snapshot in a file, the same way as {@link #saveToFile(String)}.
+	 * @param snapshot the pieces to store
+	 * @param fileName the file to store them in
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the snapshot is of a different kind of board
+	 */
+	public void saveSnapshot(BoardSnapshot snapshot, String fileName) throws IOException {
+		checkSize(snapshot);
+		DataOutputStream outStream = new DataOutputStream(new FileOutputStream(fileName, false));
+		try {
+			// There are less than 255 colors for the player to be
+			// so it should be safe to store it in a byte
+			for (int x = 0; x < GRID_WIDTH; x++) {
+				for (int y = 0; y < GRID_HEIGHT; y++) {
+					outStream.writeByte(snapshot.getGridPiece(x, y).ordinal());
+				}
+			}
+		} finally {
+			outStream.close();
+		}
+	}
+	
+	/**
+	 * Read the pieces stored in a file by {@link #saveToFile(String)} without
+	 * changing the board. The file only has a byte for every spot and doesn't
+	 * say how big the board is, which is why this isn't static: the size of
+	 * this board is what the file has to match.
+	 * @param fileName the file the pieces are stored in
+	 * @return a snapshot of the stored pieces
+	 * @throws IOException if the file can't be read, is of a board of a
+	 * different size or has something other than a piece in it
+	 */
+	public BoardSnapshot loadSnapshot(String fileName) throws IOException {
 		DataInputStream inStream = new DataInputStream(new FileInputStream(fileName));
-		// Load the stored bytes back in and convert them
-		// back into enums
-		for (int x = 0; x < GRID_WIDTH; x++) {
-			for (int y = 0; y < GRID_HEIGHT; y++) {
-				pieceGrid[x][y] = PlayerColor.values()[inStream.readByte()];
+		long red = 0;
+		long blue = 0;
+		try {
+			// Load the stored bytes back in and convert them
+			// back into enums
+			PlayerColor[] colors = PlayerColor.values();
+			for (int x = 0; x < GRID_WIDTH; x++) {
+				for (int y = 0; y < GRID_HEIGHT; y++) {
+					int value = inStream.read();
+					if (value == -1) {
+						throw new IOException("The file is of a smaller board");
+					} else if (value >= colors.length) {
+						throw new IOException("The file has something other than a piece in it");
+					}
+					if (colors[value] == PlayerColor.RED) {
+						red |= cellBit(x, y);
+					} else if (colors[value] == PlayerColor.BLUE) {
+						blue |= cellBit(x, y);
+					}
+				}
+			}
+			if (inStream.read() != -1) {
+				throw new IOException("The file is of a bigger board");
 			}
+		} finally {
+			inStream.close();
 		}
 		
-		inStream.close();
+		return new BoardSnapshot(GRID_WIDTH, GRID_HEIGHT, CONNECT_LENGTH, red, blue, 0, PlayerColor.NONE,
+				hashMasks(red, blue, ZOBRIST_KEYS), hashMasks(red, blue, MIRROR_ZOBRIST_KEYS));
+	}
+	
+	/**
+	 * Take a snapshot of the pieces on the board. This doesn't copy
+	 * anything but a few numbers, so it is much cheaper than {@link #copy()}.
+	 * @return the snapshot
+	 */
+	public BoardSnapshot snapshot() {
+		return new BoardSnapshot(GRID_WIDTH, GRID_HEIGHT, CONNECT_LENGTH, redMask, blueMask,
+				lastMoveBit, lastMoveColor, hash, mirrorHash);
+	}
+	
+	/**
+	 * Put the pieces of a snapshot back on the board.
+	 * @param snapshot a snapshot of a board of the same size
+	 */
+	public void restore(BoardSnapshot snapshot) {
+		setState(snapshot);
 		
 		// This lets the observers know the state has changed
-		// since after loading the state could be very different
+		// since after restoring the state could be very different
 		setChanged();
 		notifyObservers();
 	}
 	
+	/**
+	 * Put the pieces of a snapshot on the board without updating the observers.
+	 * @param snapshot a snapshot of a board of the same size
+	 */
+	private void setState(BoardSnapshot snapshot) {
+		checkSize(snapshot);
+		redMask = snapshot.getRedMask();
+		blueMask = snapshot.getBlueMask();
+		occupiedMask = redMask | blueMask;
+		redCount = Long.bitCount(redMask);
+		blueCount = Long.bitCount(blueMask);
+		lastMoveBit = snapshot.getLastMoveBit();
+		lastMoveColor = snapshot.getLastMoveColor();
+		hash = snapshot.getHash();
+		mirrorHash = snapshot.getMirrorHash();
+		for (int x = 0; x < GRID_WIDTH; x++) {
+			updateColumnHeight(x);
+		}
+	}
+	
+	/**
+	 * Make sure a snapshot is of a board like this one.
+	 * @param snapshot the snapshot
+	 */
+	private void checkSize(BoardSnapshot snapshot) {
+		if (snapshot.getGridWidth() != GRID_WIDTH || snapshot.getGridHeight() != GRID_HEIGHT
+				|| snapshot.getConnectLength() != CONNECT_LENGTH) {
+			throw new IllegalArgumentException("The snapshot is of a different kind of board");
+		}
+	}
+	
 	/**
 	 * Resets the state of this object to the default state
 	 */
 	public void reset() {
+		redMask = 0;
+		blueMask = 0;
+		occupiedMask = 0;
+		lastMoveBit = 0;
+		lastMoveColor = PlayerColor.NONE;
+		redCount = 0;
+		blueCount = 0;
 		for (int x = 0; x < GRID_WIDTH; x++) {
-			for (int y = 0; y < GRID_HEIGHT; y++) {
-				pieceGrid[x][y] = PlayerColor.NONE;
-			}
+			columnHeights[x] = 0;
 		}
+		rehash();
 		// The board has changed since it has been cleared so
 		// let the observers know
 		setChanged();
@@ -371,14 +1173,7 @@ public class BoardModel extends Observable {
 	 * @return the copy of this board
 	 */
 	public BoardModel copy() {
-		BoardModel newBoard = new BoardModel();
-		for (int x = 0; x < GRID_WIDTH; x++) {
-			for (int y = 0; y < GRID_HEIGHT; y++) {
-				newBoard.pieceGrid[x][y] = pieceGrid[x][y];
-			}
-		}
-		
-		return newBoard;
+		return new BoardModel(snapshot());
 	}
 }
 
@@ -2,6 +2,11 @@ package se2aa4;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -43,6 +48,62 @@ public class BoardModelTest {
 		assertEquals(PlayerColor.BLUE,theBoard.getGridPiece(expected));
 	}
 
+	@Test
+	public void testGetGridPieceByCoordinates() {
+		
+		theBoard.setGridPiece(test1,PlayerColor.RED);
+		assertEquals(PlayerColor.RED,theBoard.getGridPiece(3,5));
+		assertEquals(PlayerColor.NONE,theBoard.getGridPiece(3,4));
+	}
+
+	@Test
+	public void testGetCellPiece() {
+		
+		theBoard.setGridPiece(test5,PlayerColor.BLUE);
+		int cell = theBoard.getCellIndex(3,3);
+		assertEquals(3,theBoard.getCellX(cell));
+		assertEquals(3,theBoard.getCellY(cell));
+		assertEquals(PlayerColor.BLUE,theBoard.getCellPiece(cell));
+		assertEquals(42,theBoard.getCellCount());
+	}
+
+	@Test
+	public void testGetWinningMove() {
+		
+		assertEquals(-1,theBoard.getWinningMove(PlayerColor.RED));
+		theBoard.doTemporaryMove(1,PlayerColor.RED);
+		theBoard.doTemporaryMove(2,PlayerColor.RED);
+		theBoard.doTemporaryMove(3,PlayerColor.RED);
+		//red can win on either side
+		int move = theBoard.getWinningMove(PlayerColor.RED);
+		assertTrue(move == 0 || move == 4);
+		assertEquals(-1,theBoard.getWinningMove(PlayerColor.BLUE));
+	}
+
+	@Test
+	public void testGetBlockingMove() {
+		
+		theBoard.doTemporaryMove(2,PlayerColor.RED);
+		theBoard.doTemporaryMove(3,PlayerColor.RED);
+		theBoard.doTemporaryMove(4,PlayerColor.RED);
+		//blue can't block both sides
+		assertEquals(-1,theBoard.getBlockingMove(PlayerColor.BLUE));
+		theBoard.doTemporaryMove(1,PlayerColor.BLUE);
+		assertEquals(5,theBoard.getBlockingMove(PlayerColor.BLUE));
+		//a spot that can't be played yet doesn't need to be blocked
+		theBoard.reset();
+		theBoard.doTemporaryMove(1,PlayerColor.BLUE);
+		theBoard.doTemporaryMove(2,PlayerColor.BLUE);
+		theBoard.doTemporaryMove(3,PlayerColor.RED);
+		theBoard.doTemporaryMove(1,PlayerColor.RED);
+		theBoard.doTemporaryMove(2,PlayerColor.RED);
+		theBoard.doTemporaryMove(3,PlayerColor.RED);
+		assertEquals(-1,theBoard.getWinningMove(PlayerColor.RED));
+		assertEquals(-1,theBoard.getBlockingMove(PlayerColor.BLUE));
+		theBoard.doTemporaryMove(4,PlayerColor.BLUE);
+		assertEquals(4,theBoard.getBlockingMove(PlayerColor.BLUE));
+	}
+
 	@Test
 	public void testGetErrorPositions() {
 		
@@ -61,6 +122,29 @@ public class BoardModelTest {
 		assertEquals(PlayerColor.BLUE,theBoard.getWinner());
 	}
 
+	@Test
+	public void testGetLastMoveWinner() {
+		
+		theBoard.doMove(0, PlayerColor.RED);
+		theBoard.doMove(1, PlayerColor.RED);
+		theBoard.doMove(3, PlayerColor.RED);
+		assertEquals(PlayerColor.NONE,theBoard.getLastMoveWinner());
+		//the gap in the middle completes the connect four
+		theBoard.doTemporaryMove(2, PlayerColor.RED);
+		assertEquals(PlayerColor.RED,theBoard.getLastMoveWinner());
+		theBoard.undoTemporaryMove(2);
+		assertEquals(PlayerColor.NONE,theBoard.getLastMoveWinner());
+	}
+
+	@Test
+	public void testGetLastMoveCell() {
+		
+		assertEquals(-1,theBoard.getLastMoveCell());
+		theBoard.doTemporaryMove(4, PlayerColor.RED);
+		theBoard.doTemporaryMove(4, PlayerColor.BLUE);
+		assertEquals(theBoard.getCellIndex(4,4),theBoard.getLastMoveCell());
+	}
+
 	@Test
 	public void testGetWinningPieces() {
 		
@@ -87,6 +171,29 @@ public class BoardModelTest {
 		assertEquals(4,theBoard.getPieceCount(PlayerColor.BLUE));
 	}
 
+	@Test
+	public void testGetPieceCountAfterEdit() {
+		
+		theBoard.setGridPiece(test1,PlayerColor.BLUE);
+		theBoard.setGridPiece(test2,PlayerColor.RED);
+		//replacing a piece should update the counts of both colors
+		theBoard.setGridPiece(test1,PlayerColor.RED);
+		assertEquals(0,theBoard.getPieceCount(PlayerColor.BLUE));
+		assertEquals(2,theBoard.getPieceCount(PlayerColor.RED));
+		assertEquals(40,theBoard.getPieceCount(PlayerColor.NONE));
+	}
+
+	@Test
+	public void testGetColumnSpace() {
+		
+		assertEquals(6,theBoard.getColumnSpace(3));
+		theBoard.setGridPiece(test1,PlayerColor.BLUE);
+		theBoard.doTemporaryMove(3, PlayerColor.RED);
+		assertEquals(4,theBoard.getColumnSpace(3));
+		theBoard.undoTemporaryMove(3);
+		assertEquals(5,theBoard.getColumnSpace(3));
+	}
+
 	@Test
 	public void testWhoHasMorePieces() {
 		
@@ -124,6 +231,17 @@ public class BoardModelTest {
 		assertEquals(true,theBoard.doMove(4, PlayerColor.RED));
 	}
 
+	@Test
+	public void testDoMoveFullColumn() {
+		
+		for (int i = 0; i < 6; i++)
+			assertEquals(true,theBoard.doMove(3, (i % 2 == 0) ? PlayerColor.RED : PlayerColor.BLUE));
+		//the column is full so the piece can't go in
+		assertEquals(false,theBoard.doMove(3, PlayerColor.RED));
+		assertEquals(PlayerColor.BLUE,theBoard.getGridPiece(new Position(3,0)));
+		assertEquals(PlayerColor.NONE,theBoard.getWinner());
+	}
+
 	@Test
 	public void testDoTemporaryMove() {
 		
@@ -166,4 +284,212 @@ public class BoardModelTest {
 		assertEquals(PlayerColor.RED, copy.getGridPiece(test3));
 		assertEquals(PlayerColor.BLUE, copy.getGridPiece(test4));
 	}
+	
+	@Test
+	public void testHashAfterUndo() {
+		long empty = theBoard.getHash();
+		theBoard.doTemporaryMove(3,PlayerColor.RED);
+		long oneMove = theBoard.getHash();
+		assertTrue(oneMove != empty);
+		theBoard.doTemporaryMove(3,PlayerColor.BLUE);
+		theBoard.undoTemporaryMove(3);
+		//undoing a move gives back the old hash
+		assertEquals(oneMove,theBoard.getHash());
+		theBoard.undoTemporaryMove(3);
+		assertEquals(empty,theBoard.getHash());
+	}
+	
+	@Test
+	public void testHashAfterSetGridPiece() {
+		theBoard.doTemporaryMove(2,PlayerColor.RED);
+		long redHash = theBoard.getHash();
+		//the same position made a different way has the same hash
+		BoardModel other = new BoardModel();
+		other.setGridPiece(test2,PlayerColor.BLUE);
+		assertTrue(redHash != other.getHash());
+		other.setGridPiece(test2,PlayerColor.RED);
+		assertEquals(redHash,other.getHash());
+		assertEquals(redHash,other.copy().getHash());
+	}
+	
+	@Test
+	public void testCanonicalHash() {
+		theBoard.doTemporaryMove(1,PlayerColor.RED);
+		theBoard.doTemporaryMove(3,PlayerColor.BLUE);
+		BoardModel mirror = new BoardModel();
+		mirror.doTemporaryMove(5,PlayerColor.RED);
+		mirror.doTemporaryMove(3,PlayerColor.BLUE);
+		//mirror images have swapped hashes and the same canonical hash
+		assertEquals(theBoard.getHash(),mirror.getMirrorHash());
+		assertEquals(theBoard.getMirrorHash(),mirror.getHash());
+		assertEquals(theBoard.getCanonicalHash(),mirror.getCanonicalHash());
+		//a symmetric position is its own mirror image
+		theBoard.reset();
+		theBoard.doTemporaryMove(3,PlayerColor.RED);
+		assertEquals(theBoard.getHash(),theBoard.getMirrorHash());
+	}
+	
+	@Test
+	public void testIsSymmetric() {
+		assertTrue(theBoard.isSymmetric());
+		theBoard.doTemporaryMove(3,PlayerColor.RED);
+		assertTrue(theBoard.isSymmetric());
+		theBoard.doTemporaryMove(2,PlayerColor.BLUE);
+		assertFalse(theBoard.isSymmetric());
+		theBoard.doTemporaryMove(4,PlayerColor.BLUE);
+		assertTrue(theBoard.isSymmetric());
+		assertEquals(4,theBoard.getMirrorColumn(2));
+	}
+	
+	@Test
+	public void testGetMirrorPositionKey() {
+		theBoard.doTemporaryMove(1,PlayerColor.RED);
+		theBoard.doTemporaryMove(1,PlayerColor.BLUE);
+		BoardModel mirror = new BoardModel();
+		mirror.doTemporaryMove(5,PlayerColor.RED);
+		mirror.doTemporaryMove(5,PlayerColor.BLUE);
+		//the key of the mirror image is the key of the mirrored board
+		assertEquals(mirror.getPositionKey(PlayerColor.RED),theBoard.getMirrorPositionKey(PlayerColor.RED));
+		assertEquals(mirror.getPositionKey(PlayerColor.BLUE),theBoard.getMirrorPositionKey(PlayerColor.BLUE));
+		assertTrue(theBoard.isMirrorCanonical() != mirror.isMirrorCanonical());
+	}
+	
+	@Test
+	public void testSnapshot() {
+		theBoard.doTemporaryMove(2,PlayerColor.RED);
+		theBoard.doTemporaryMove(3,PlayerColor.BLUE);
+		BoardSnapshot snapshot = theBoard.snapshot();
+		theBoard.doTemporaryMove(3,PlayerColor.RED);
+		//the snapshot doesn't change with the board
+		assertEquals(PlayerColor.NONE,snapshot.getGridPiece(3,4));
+		assertEquals(PlayerColor.BLUE,snapshot.getGridPiece(3,5));
+		assertEquals(40,snapshot.getPieceCount(PlayerColor.NONE));
+		assertFalse(snapshot.equals(theBoard.snapshot()));
+		//restoring puts back the pieces, the hash and the last move
+		theBoard.restore(snapshot);
+		assertEquals(snapshot,theBoard.snapshot());
+		assertEquals(snapshot.getHash(),theBoard.getHash());
+		assertEquals(PlayerColor.NONE,theBoard.getGridPiece(3,4));
+		assertEquals(5,theBoard.getColumnSpace(3));
+		assertEquals(3,theBoard.getCellX(theBoard.getLastMoveCell()));
+		assertEquals(snapshot,new BoardModel(snapshot).snapshot());
+	}
+	
+	@Test
+	public void testLoadSnapshot() throws Exception {
+		theBoard.setGridPiece(test1,PlayerColor.BLUE);
+		theBoard.setGridPiece(test5,PlayerColor.RED);
+		File file = File.createTempFile("board", ".bin");
+		file.deleteOnExit();
+		theBoard.saveToFile(file.getPath());
+		//the file can be read without changing the board and read back into one
+		BoardSnapshot snapshot = theBoard.loadSnapshot(file.getPath());
+		assertEquals(theBoard.snapshot(),snapshot);
+		assertEquals(theBoard.getHash(),snapshot.getHash());
+		theBoard.saveSnapshot(snapshot,file.getPath());
+		BoardModel loaded = new BoardModel();
+		loaded.loadFromFile(file.getPath());
+		assertEquals(PlayerColor.RED,loaded.getGridPiece(test5));
+		assertEquals(1,loaded.getErrorPositions().length);
+	}
+	
+	@Test
+	public void testLoadBadFile() throws Exception {
+		File file = File.createTempFile("board", ".bin");
+		file.deleteOnExit();
+		//files of smaller and bigger boards don't fit this board
+		new BoardModel(5,4,3).saveToFile(file.getPath());
+		try {
+			theBoard.loadSnapshot(file.getPath());
+			fail();
+		} catch (IOException exception) {
+		}
+		new BoardModel(8,7,4).saveToFile(file.getPath());
+		try {
+			theBoard.loadFromFile(file.getPath());
+			fail();
+		} catch (IOException exception) {
+		}
+		//a byte that isn't a color
+		byte[] bytes = new byte[42];
+		bytes[10] = 9;
+		FileOutputStream outStream = new FileOutputStream(file);
+		outStream.write(bytes);
+		outStream.close();
+		try {
+			theBoard.loadSnapshot(file.getPath());
+			fail();
+		} catch (IOException exception) {
+		}
+		//the board isn't changed by a file that couldn't be loaded
+		assertEquals(42,theBoard.getPieceCount(PlayerColor.NONE));
+	}
+	
+	@Test
+	public void testBoardTooBig() {
+		//9 columns of 7 rows and a spare bit each need 72 bits
+		try {
+			new BoardModel(9,7,4);
+			fail();
+		} catch (IllegalArgumentException exception) {
+		}
+		//a line longer than the board can never be made
+		try {
+			new BoardModel(7,6,8);
+			fail();
+		} catch (IllegalArgumentException exception) {
+		}
+	}
+	
+	@Test
+	public void testConnectFive() {
+		BoardModel board = new BoardModel(9,6,5);
+		assertEquals(5,board.getConnectLength());
+		for (int x = 2; x < 6; x++)
+			board.setGridPiece(new Position(x,5),PlayerColor.RED);
+		//four in a row isn't enough
+		assertEquals(PlayerColor.NONE,board.getWinner());
+		assertEquals(2,Long.bitCount(board.getThreatMask(PlayerColor.RED)));
+		board.setGridPiece(new Position(6,5),PlayerColor.RED);
+		assertEquals(PlayerColor.RED,board.getWinner());
+		assertEquals(5,board.getWinningPieces().length);
+	}
+	
+	@Test
+	public void testThreatMaskOnOtherBoards() {
+		//the threats have to be the same as trying every empty spot
+		int[][] sizes = {{7,6,4},{8,7,4},{9,6,5},{5,4,3},{7,2,2}};
+		Random random = new Random(5);
+		for (int[] size : sizes) {
+			BoardModel board = new BoardModel(size[0],size[1],size[2]);
+			for (int i = 0; i < 50; i++) {
+				board.reset();
+				//drop pieces the normal way since a vertical line can only be completed on top
+				PlayerColor player = PlayerColor.RED;
+				for (int j = random.nextInt(size[0] * size[1]); j > 0; j--) {
+					int column = random.nextInt(size[0]);
+					if (board.doTemporaryMove(column, player)) {
+						if (board.getWinner() != PlayerColor.NONE)
+							board.undoTemporaryMove(column); //don't finish the game
+						else
+							player = player.opponent();
+					}
+				}
+				long red = board.getPlayerMask(PlayerColor.RED);
+				long occupied = board.getOccupiedMask();
+				long expected = 0;
+				for (int x = 0; x < size[0]; x++)
+					for (int y = 0; y < size[1]; y++) {
+						if (board.getGridPiece(new Position(x,y)) != PlayerColor.NONE)
+							continue;
+						BoardModel copy = new BoardModel(size[0],size[1],size[2]);
+						copy.setGridPiece(new Position(x,y),PlayerColor.RED);
+						long bit = copy.getPlayerMask(PlayerColor.RED);
+						if (board.hasConnection(red | bit))
+							expected |= bit;
+					}
+				assertEquals(size[0] + "x" + size[1],expected,board.getThreatMask(red,occupied));
+			}
+		}
+	}
 }
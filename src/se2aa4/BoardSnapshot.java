@@ -0,0 +1,165 @@
+package se2aa4;
+/**
+ * This class is an unchangeable copy of the pieces on a board. It is only a
+ * few numbers so taking one with {@link BoardModel#snapshot()} and putting it
+ * back with {@link BoardModel#restore(BoardSnapshot)} is cheap, and since it
+ * can't change it can be shared between threads without copying it.
+ */
+public final class BoardSnapshot {
+	private final int gridWidth;
+	private final int gridHeight;
+	private final int connectLength;
+	private final long redMask;
+	private final long blueMask;
+	// The spot and color of the last dropped piece, the bit is 0 if it is unknown
+	private final long lastMoveBit;
+	private final PlayerColor lastMoveColor;
+	private final long hash;
+	private final long mirrorHash;
+	
+	/**
+	 * Create a new snapshot. Only boards make snapshots since the masks
+	 * and hashes have to be laid out the way the board lays them out.
+	 * @param gridWidth the width of the board
+	 * @param gridHeight the height of the board
+	 * @param connectLength how many pieces in a row it takes to win
+	 * @param redMask the bitboard of the red pieces
+	 * @param blueMask the bitboard of the blue pieces
+	 * @param lastMoveBit the spot of the last dropped piece, or 0 if it is unknown
+	 * @param lastMoveColor the color of the last dropped piece
+	 * @param hash the hash of the position
+	 * @param mirrorHash the hash of the mirror image of the position
+	 */
+	BoardSnapshot(int gridWidth, int gridHeight, int connectLength, long redMask, long blueMask,
+			long lastMoveBit, PlayerColor lastMoveColor, long hash, long mirrorHash) {
+		this.gridWidth = gridWidth;
+		this.gridHeight = gridHeight;
+		this.connectLength = connectLength;
+		this.redMask = redMask;
+		this.blueMask = blueMask;
+		this.lastMoveBit = lastMoveBit;
+		this.lastMoveColor = lastMoveColor;
+		this.hash = hash;
+		this.mirrorHash = mirrorHash;
+	}
+	
+	/**
+	 * Get the width of the board the snapshot was taken of.
+	 * @return the amount of columns
+	 */
+	public int getGridWidth() {
+		return gridWidth;
+	}
+	
+	/**
+	 * Get the height of the board the snapshot was taken of.
+	 * @return the amount of rows
+	 */
+	public int getGridHeight() {
+		return gridHeight;
+	}
+	
+	/**
+	 * Find how many pieces in a row it takes to win on the board the snapshot was taken of.
+	 * @return the length of a winning line
+	 */
+	public int getConnectLength() {
+		return connectLength;
+	}
+	
+	/**
+	 * Get the piece at a spot, the same way as {@link BoardModel#getGridPiece(int, int)}.
+	 * @param x the column
+	 * @param y the row, counting down from the top
+	 * @return the color of the piece, or NONE if the spot is empty
+	 */
+	public PlayerColor getGridPiece(int x, int y) {
+		long bit = 1L << (x * (gridHeight + 1) + gridHeight - 1 - y);
+		if ((redMask & bit) != 0)
+			return PlayerColor.RED;
+		else if ((blueMask & bit) != 0)
+			return PlayerColor.BLUE;
+		return PlayerColor.NONE;
+	}
+	
+	/**
+	 * Get the piece at a position on the board.
+	 * @param position the position
+	 * @return the color of the piece, or NONE if the spot is empty
+	 */
+	public PlayerColor getGridPiece(Position position) {
+		return getGridPiece(position.x, position.y);
+	}
+	
+	/**
+	 * Find how many pieces of a color there are, or how many empty spots.
+	 * @param color the color to count
+	 * @return the amount
+	 */
+	public int getPieceCount(PlayerColor color) {
+		switch (color) {
+		case RED: return Long.bitCount(redMask);
+		case BLUE: return Long.bitCount(blueMask);
+		default: return gridWidth * gridHeight - Long.bitCount(redMask | blueMask);
+		}
+	}
+	
+	/**
+	 * Get the hash of the position, the same as {@link BoardModel#getHash()}.
+	 * @return the hash
+	 */
+	public long getHash() {
+		return hash;
+	}
+	
+	/**
+	 * Get the hash shared by the position and its mirror image,
+	 * the same as {@link BoardModel#getCanonicalHash()}.
+	 * @return the canonical hash
+	 */
+	public long getCanonicalHash() {
+		return Math.min(hash, mirrorHash);
+	}
+	
+	long getMirrorHash() {
+		return mirrorHash;
+	}
+	
+	long getRedMask() {
+		return redMask;
+	}
+	
+	long getBlueMask() {
+		return blueMask;
+	}
+	
+	long getLastMoveBit() {
+		return lastMoveBit;
+	}
+	
+	PlayerColor getLastMoveColor() {
+		return lastMoveColor;
+	}
+	
+	/**
+	 * Check if another snapshot has the same pieces on the same kind of board.
+	 * The last move isn't compared since it doesn't change the position.
+	 * @param other the object to compare with
+	 * @return true if the positions are the same
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof BoardSnapshot)) {
+			return false;
+		}
+		BoardSnapshot snapshot = (BoardSnapshot) other;
+		return gridWidth == snapshot.gridWidth && gridHeight == snapshot.gridHeight
+				&& connectLength == snapshot.connectLength
+				&& redMask == snapshot.redMask && blueMask == snapshot.blueMask;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
+	}
+}
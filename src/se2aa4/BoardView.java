@@ -32,6 +32,7 @@ public class BoardView {
 	
 	private final int BOARD_WIDTH;
 	private final int BOARD_HEIGHT;
+	private final int CONNECT_LENGTH;
 	
 	private JFrame frame;
 	private JLabel titleLabel;
@@ -57,11 +58,13 @@ public class BoardView {
 	 * the frame will be created and be getting user input.
 	 * @param boardWidth the width of the board in pieces
 	 * @param boardHeight the height of the board in pieces
+	 * @param connectLength how many pieces in a row it takes to win
 	 * @param controller the controller to send user input updates to
 	 */
-	public BoardView(int boardWidth, int boardHeight, BoardController controller) {
+	public BoardView(int boardWidth, int boardHeight, int connectLength, BoardController controller) {
 		BOARD_WIDTH = boardWidth;
 		BOARD_HEIGHT = boardHeight;
+		CONNECT_LENGTH = connectLength;
 		
 		// Initialized the grid of buttons used to display the board pieces
 		pieceGrid = new JButton[BOARD_WIDTH][BOARD_HEIGHT];
@@ -94,7 +97,7 @@ public class BoardView {
 		bluePieceHL = new ImageIcon(createPieceImage(PlayerColor.BLUE, Color.YELLOW));
 		redPieceHL = new ImageIcon(createPieceImage(PlayerColor.RED, Color.YELLOW));
 		
-		frame = new JFrame("Connect Four");
+		frame = new JFrame((CONNECT_LENGTH == BoardModel.DEFAULT_CONNECT_LENGTH) ? "Connect Four" : "Connect " + CONNECT_LENGTH);
 		
 		JPanel contentPanel = new JPanel();
 		frame.setContentPane(contentPanel);
@@ -102,7 +105,8 @@ public class BoardView {
 		frame.setResizable(false);
 		
 		GridBagLayout gbl_contentPanel = new GridBagLayout();
-		gbl_contentPanel.columnWidths = new int[]{150,500,150};
+		// The middle column has to be wide enough for bigger boards
+		gbl_contentPanel.columnWidths = new int[]{150,Math.max(500, BOARD_WIDTH * PIECE_SIZE + 10),150};
 		gbl_contentPanel.rowHeights = new int[]{50,50,200};
 		contentPanel.setLayout(gbl_contentPanel);
 		
@@ -161,7 +165,7 @@ public class BoardView {
 			for (int x = 0; x < BOARD_WIDTH; x++) {
 				JButton piece = new JButton(emptyPiece);
 				componentMap.put(piece, BoardComponentType.BOARD_BUTTON);
-				buttonPositionMap.put(piece, new Position(x,y));
+				buttonPositionMap.put(piece, Position.of(x, y));
 				piece.addActionListener(controller);
 				piece.setBorder(BorderFactory.createEmptyBorder());
 				piece.setContentAreaFilled(false);
@@ -173,18 +177,22 @@ public class BoardView {
 		JPanel startPanel = new JPanel();
 		JButton newGameButton2P = new JButton("New Game 2 Player");
 		JButton newGameButtonAI = new JButton("New Game with AI");
+		JButton newGameButtonMCTS = new JButton("New Game with Monte Carlo AI");
 		JButton editButton = new JButton("Edit");
 		JButton loadButton = new JButton("Load Game");
 		componentMap.put(newGameButton2P, BoardComponentType.NEW_GAME_2P_BUTTON);
 		componentMap.put(newGameButtonAI, BoardComponentType.NEW_GAME_AI_BUTTON);
+		componentMap.put(newGameButtonMCTS, BoardComponentType.NEW_GAME_MCTS_BUTTON);
 		componentMap.put(editButton, BoardComponentType.EDIT_BUTTON);
 		componentMap.put(loadButton, BoardComponentType.LOAD_BUTTON);
 		newGameButton2P.addActionListener(controller);
 		newGameButtonAI.addActionListener(controller);
+		newGameButtonMCTS.addActionListener(controller);
 		editButton.addActionListener(controller);
 		loadButton.addActionListener(controller);
 		startPanel.add(newGameButton2P);
 		startPanel.add(newGameButtonAI);
+		startPanel.add(newGameButtonMCTS);
 		startPanel.add(loadButton);
 		startPanel.add(editButton);
 		
@@ -352,7 +360,7 @@ public class BoardView {
 	public void drawModel(BoardModel model) {
 		for (int y = 0; y < BOARD_HEIGHT; y++) {
 			for (int x = 0; x < BOARD_WIDTH; x++) {
-				PlayerColor currentColor = model.getGridPiece(new Position(x, y));
+				PlayerColor currentColor = model.getGridPiece(x, y);
 				// Depending on the piece at this x,y position draw the correct color piece on the screen
 				if (currentColor == PlayerColor.BLUE) {
 					pieceGrid[x][y].setIcon(bluePiece);
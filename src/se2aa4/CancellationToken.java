@@ -0,0 +1,25 @@
+package se2aa4;
+/**
+ * This class is used to tell a search running on another thread
+ * that its result isn't needed anymore. The search checks the token
+ * every so often and stops as soon as it sees it was cancelled.
+ * A token can't be used again after it is cancelled.
+ */
+public class CancellationToken {
+	private volatile boolean cancelled;
+	
+	/**
+	 * Ask every search using this token to stop.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * Check if the searches using this token should stop.
+	 * @return true if the token was cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
@@ -1,5 +1,15 @@
 package se2aa4;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * This class tries to decide what the best move is for
  * a given player. Sometimes it will seem like the AI missed
@@ -10,25 +20,323 @@ package se2aa4;
  * it might just give up and do something that seems unintelligent 
  * but that is only because it knows it is going to lose for sure.
  */
-public class ConnectFourAI {
+public class ConnectFourAI implements GameAI {
 	
 	private static final int MAX_SCORE = 10000;
 	private static final int MIN_SCORE = -10000;
+	private static final int DEFAULT_DEPTH = 7;
+	private static final int DEFAULT_TABLE_MEGABYTES = 16;
+	// Mixed into the hash of a position when it is red's turn
+	private static final long RED_TO_MOVE_KEY = 0x9E3779B97F4A7C15L;
+	// How many nodes to search between checking the time
+	private static final int NODES_PER_TIME_CHECK = 1024;
 	
 	private final int GRID_WIDTH;
 	private final int GRID_HEIGHT;
 	
-	private int bestMove;
 	private BoardModel board;
+	private SearchDriver driver;
+	private MoveOrdering ordering;
+	private int[] columnOrder;
+	private TranspositionTable table;
+	private WindowEvaluator evaluator;
+	
+	// Used to stop the search when the time runs out
+	private long deadline;
+	private boolean useDeadline;
+	private boolean searchAborted;
+	private int nodesUntilTimeCheck;
+	// Set from another thread to stop searches early
+	private volatile boolean stopRequested;
+	private CancellationToken cancellationToken;
+	
+	// Moves that caused cutoffs, used to order the moves when the ordering is learned.
+	// Killer moves are indexed by how many pieces are on the board and the
+	// history table by player, column and row
+	private int[][] killerMoves;
+	private int[][][] history;
+	// The moves of each node being searched in the order they are tried,
+	// indexed by how many pieces are on the board
+	private int[][] orderedMoves;
+	private int[][] orderedScores;
+	
+	// How much work the searches did since the AI was created
+	private long nodeCount;
+	private long leafCount;
+	// Only the nodes that got to searching their moves could have a cutoff
+	private long expandedCount;
+	private long cutoffCount;
+	private long firstMoveCutoffCount;
+	
+	// How many moves ahead the last search looked, not counting unfinished searches
+	private int completedDepth;
+	// Whether the last timed search found a result that looking longer can't change
+	private boolean searchComplete;
+	
+	// The value of the best move found by the last search of the root
+	private int rootValue;
+	
+	// Used to search the moves at the root at the same time
+	private int threadCount;
+	private int tableMegabytes;
+	private ForkJoinPool pool;
+	// Read by stop() and resume() from other threads, while a search can create or drop them
+	private volatile ConnectFourAI[] rootWorkers;
+	
+	// Only created if perfect play is asked for since it uses a lot of memory
+	private ConnectFourSolver solver;
+	private OpeningBook openingBook;
 	
 	/**
 	 * Create a new AI object
 	 * @param board the starting state of the board to consider
 	 */
 	public ConnectFourAI(BoardModel board) {
+		this(board, DEFAULT_TABLE_MEGABYTES);
+	}
+	
+	/**
+	 * Create a new AI object that starts at the position of a snapshot.
+	 * @param position the starting position to consider
+	 */
+	public ConnectFourAI(BoardSnapshot position) {
+		this(new BoardModel(position));
+	}
+	
+	/**
+	 * Create a new AI object with a certain amount of memory for
+	 * remembering positions it already searched.
+	 * @param board the starting state of the board to consider
+	 * @param tableMegabytes the size of the transposition table in megabytes
+	 */
+	public ConnectFourAI(BoardModel board, int tableMegabytes) {
+		this(board, tableMegabytes, SearchDriver.NEGAMAX);
+	}
+	
+	/**
+	 * Create a new AI object that searches in a certain way.
+	 * @param board the starting state of the board to consider
+	 * @param driver how to search the game tree
+	 */
+	public ConnectFourAI(BoardModel board, SearchDriver driver) {
+		this(board, DEFAULT_TABLE_MEGABYTES, driver);
+	}
+	
+	/**
+	 * Create a new AI object that searches in a certain way with a certain
+	 * amount of memory for remembering positions it already searched.
+	 * @param board the starting state of the board to consider
+	 * @param tableMegabytes the size of the transposition table in megabytes
+	 * @param driver how to search the game tree
+	 */
+	public ConnectFourAI(BoardModel board, int tableMegabytes, SearchDriver driver) {
 		this.board = board;
+		this.driver = driver;
 		GRID_WIDTH = board.getGridWidth();
 		GRID_HEIGHT = board.getGridHeight();
+		table = new TranspositionTable(tableMegabytes);
+		evaluator = new WindowEvaluator(board);
+		this.tableMegabytes = tableMegabytes;
+		threadCount = 1;
+		
+		int cellCount = board.getCellCount();
+		killerMoves = new int[cellCount + 1][2];
+		history = new int[2][GRID_WIDTH][GRID_HEIGHT];
+		orderedMoves = new int[cellCount + 1][GRID_WIDTH];
+		orderedScores = new int[cellCount + 1][GRID_WIDTH];
+		clearKillerMoves();
+		setMoveOrdering(MoveOrdering.CENTER_FIRST);
+	}
+	
+	/**
+	 * Choose how many threads to search with. With more than one thread every
+	 * move at the root is searched at the same time by a separate worker that
+	 * has its own copy of the board and its own transposition table. The
+	 * chosen move is still the same as with one thread. The threads and
+	 * workers are only created once a search needs them. The moves at the
+	 * root are searched all at once instead of with MTD(f), so with the
+	 * {@link SearchDriver#MTDF} driver the workers search like {@link SearchDriver#NEGAMAX}.
+	 * @param threads the amount of threads to use, 1 to search on the calling thread
+	 */
+	public void setThreadCount(int threads) {
+		// The workers are made again for the new amount of threads, or let go of for one thread
+		close();
+		threadCount = Math.max(1, threads);
+	}
+	
+	/**
+	 * Stop the threads the AI searches with and let go of the workers and
+	 * their tables. They are created again by the next search that needs them.
+	 */
+	@Override
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		rootWorkers = null;
+	}
+	
+	/**
+	 * Create the threads and the workers for searching the root moves at the same time.
+	 */
+	private void startWorkers() {
+		pool = new ForkJoinPool(threadCount);
+		// Split the memory between the workers since they all have a table
+		rootWorkers = new ConnectFourAI[GRID_WIDTH];
+		for (int column = 0; column < GRID_WIDTH; column++) {
+			rootWorkers[column] = new ConnectFourAI(board.copy(), Math.max(1, tableMegabytes / GRID_WIDTH), driver);
+		}
+	}
+	
+	/**
+	 * Find how the AI searches the game tree.
+	 * @return the search driver
+	 */
+	public SearchDriver getSearchDriver() {
+		return driver;
+	}
+	
+	/**
+	 * Find how many threads the AI searches with.
+	 * @return the amount of threads
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+	
+	/**
+	 * Get the transposition table, which can be used to check how
+	 * well it is working.
+	 * @return the transposition table
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return table;
+	}
+	
+	/**
+	 * Choose the order the columns are tried in. This doesn't change
+	 * which move is chosen, only how fast it is found.
+	 * @param ordering the move ordering to use
+	 */
+	public void setMoveOrdering(MoveOrdering ordering) {
+		this.ordering = ordering;
+		columnOrder = ordering.getColumnOrder(GRID_WIDTH);
+		if (rootWorkers != null) {
+			for (ConnectFourAI worker : rootWorkers) {
+				worker.setMoveOrdering(ordering);
+			}
+		}
+	}
+	
+	/**
+	 * Find how many positions were searched since the AI was created,
+	 * including the ones searched by the other threads.
+	 * @return the amount of positions
+	 */
+	public long getNodeCount() {
+		long count = nodeCount;
+		if (rootWorkers != null) {
+			for (ConnectFourAI worker : rootWorkers) {
+				count += worker.nodeCount;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Find how many times a move was good enough that the rest of the
+	 * moves of a position didn't have to be searched, since the AI was created.
+	 * @return the amount of cutoffs
+	 */
+	public long getCutoffCount() {
+		long count = cutoffCount;
+		if (rootWorkers != null) {
+			for (ConnectFourAI worker : rootWorkers) {
+				count += worker.cutoffCount;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Find how many of the cutoffs were caused by the first move that was
+	 * tried. The closer this is to {@link #getCutoffCount()} the better the
+	 * moves are ordered.
+	 * @return the amount of cutoffs on the first move
+	 */
+	public long getFirstMoveCutoffCount() {
+		long count = firstMoveCutoffCount;
+		if (rootWorkers != null) {
+			for (ConnectFourAI worker : rootWorkers) {
+				count += worker.firstMoveCutoffCount;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Move the AI to a different position. Everything the AI learned
+	 * is kept, so it can be used for a whole game without searching
+	 * the same positions again every move.
+	 * @param board the board to consider, which is copied
+	 */
+	@Override
+	public void setPosition(BoardModel board) {
+		setPosition(board.snapshot());
+	}
+	
+	/**
+	 * Move the AI to the position of a snapshot, the same way as
+	 * {@link #setPosition(BoardModel)}. The pieces are put on the board
+	 * the AI already has, so nothing new is made.
+	 * @param position the position to consider
+	 */
+	@Override
+	public void setPosition(BoardSnapshot position) {
+		board.restore(position);
+	}
+	
+	/**
+	 * Play a move on the AI's board, for keeping it up to date
+	 * with a game one move at a time.
+	 * @param column the column to drop a piece into
+	 * @param player the color of the piece
+	 * @return true if there was room in the column
+	 */
+	public boolean playMove(int column, PlayerColor player) {
+		return board.doTemporaryMove(column, player);
+	}
+	
+	/**
+	 * Forget everything the AI learned, for when a new game starts.
+	 * The board is emptied and the opening book is kept.
+	 */
+	@Override
+	public void newGame() {
+		board.reset();
+		table.clear();
+		clearKillerMoves();
+		for (int[][] playerHistory : history) {
+			for (int[] columnHistory : playerHistory) {
+				Arrays.fill(columnHistory, 0);
+			}
+		}
+		if (rootWorkers != null) {
+			for (ConnectFourAI worker : rootWorkers) {
+				worker.newGame();
+			}
+		}
+		solver = null;
+	}
+	
+	/**
+	 * Give the AI a book of solved opening positions. If the current position
+	 * is in the book the move from the book is used instead of searching.
+	 * @param book the opening book, or null to not use one
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		openingBook = book;
 	}
 	
 	/**
@@ -37,23 +345,808 @@ public class ConnectFourAI {
 	 * @return the column a piece should be dropped into
 	 */
 	public int getBestMove(PlayerColor player) {
+		completedDepth = 0;
+		int bookMove = getBookMove(player);
+		if (bookMove != -1) {
+			return bookMove;
+		}
+		
 		// Look ahead 7 moves and figure out which one is best using the negamax algorithm
-		negamax(7, -1, player);
-		return bestMove;
+		return getBestMove(player, DEFAULT_DEPTH);
+	}
+	
+	/**
+	 * Look up the current position in the opening book.
+	 * @param player which player's move
+	 * @return the column from the book, or -1 if there is no book or the position isn't in it
+	 */
+	private int getBookMove(PlayerColor player) {
+		if (openingBook == null) {
+			return -1;
+		}
+		return openingBook.getBestMove(board, player);
+	}
+	
+	/**
+	 * Get the best move looking a given amount of moves ahead.
+	 * If several moves are equally good the rightmost one is chosen.
+	 * @param player which player's move
+	 * @param depth how many moves to look ahead
+	 * @return the column a piece should be dropped into
+	 */
+	public int getBestMove(PlayerColor player, int depth) {
+		// If it is a draw or there is nothing to look at just pick the first column
+		completedDepth = 0;
+		if (depth == 0 || board.getPieceCount(PlayerColor.NONE) == 0) {
+			return 0;
+		}
+		
+		newSearch();
+		useDeadline = false;
+		int bestColumn = search(depth, player, -1);
+		if (!searchAborted) {
+			completedDepth = depth;
+		}
+		return bestColumn;
+	}
+	
+	/**
+	 * Get the best move that can be found in a certain amount of time.
+	 * The AI looks 1 move ahead, then 2 moves ahead and so on until the
+	 * time runs out, and uses the result of the deepest search it finished.
+	 * Each search tries the best move of the one before it first so the
+	 * shallower searches make the deeper ones faster. Positions in the
+	 * opening book are answered right away.
+	 * @param player which player's move
+	 * @param budget how long to search for, at least 1 move ahead is always searched
+	 * @return the column a piece should be dropped into
+	 */
+	@Override
+	public int getBestMove(PlayerColor player, Duration budget) {
+		completedDepth = 0;
+		searchComplete = true;
+		int maxDepth = board.getPieceCount(PlayerColor.NONE);
+		if (maxDepth == 0) {
+			return 0;
+		}
+		
+		int bookMove = getBookMove(player);
+		if (bookMove != -1) {
+			return bookMove;
+		}
+		
+		newSearch();
+		deadline = System.nanoTime() + budget.toNanos();
+		useDeadline = false;
+		int bestColumn = search(1, player, -1);
+		if (!searchAborted) {
+			completedDepth = 1;
+		}
+		
+		useDeadline = true;
+		// The first search is only aborted if the search was stopped or cancelled
+		for (int depth = 2; depth <= maxDepth && !searchAborted; depth++) {
+			// If a win or a loss was already found looking deeper won't change it
+			if (Math.abs(rootValue) == MAX_SCORE) {
+				break;
+			}
+			
+			int column = search(depth, player, bestColumn);
+			if (searchAborted) {
+				// The unfinished search can't be trusted
+				break;
+			}
+			bestColumn = column;
+			completedDepth = depth;
+		}
+		
+		// Unless the last search was cut short it either found a win or
+		// a loss or looked all the way to the end of the game
+		searchComplete = !searchAborted && (completedDepth == maxDepth || Math.abs(rootValue) == MAX_SCORE);
+		useDeadline = false;
+		return bestColumn;
+	}
+	
+	/**
+	 * Check if the last search with a time budget found everything there is to
+	 * find, because it found a win or a loss, looked to the end of the game or
+	 * used the opening book. Searching the same position longer won't change the move.
+	 * @return true if the search is complete
+	 */
+	public boolean isSearchComplete() {
+		return searchComplete;
+	}
+	
+	/**
+	 * Find how good every move is, looking 7 moves ahead.
+	 * @param player which player's move
+	 * @return the analysis of every column that isn't full, from left to right
+	 */
+	public List<MoveAnalysis> analyze(PlayerColor player) {
+		return analyze(player, DEFAULT_DEPTH);
+	}
+	
+	/**
+	 * Find how good every move is looking a given amount of moves ahead.
+	 * Every move gets an exact score instead of just the best one, but
+	 * they are searched one after another with the same transposition table
+	 * so each search reuses most of the positions of the ones before it.
+	 * This always searches on the calling thread.
+	 * @param player which player's move
+	 * @param depth how many moves to look ahead
+	 * @return the analysis of every column that isn't full, from left to right,
+	 * or an empty list if the search was stopped or cancelled before it finished
+	 */
+	public List<MoveAnalysis> analyze(PlayerColor player, int depth) {
+		MoveAnalysis[] analyses = new MoveAnalysis[GRID_WIDTH];
+		if (depth > 0 && board.getPieceCount(PlayerColor.NONE) > 0) {
+			newSearch();
+			useDeadline = false;
+			searchAborted = false;
+			nodesUntilTimeCheck = NODES_PER_TIME_CHECK;
+			evaluator.reset(board);
+			
+			boolean symmetric = board.isSymmetric();
+			for (int column : columnOrder) {
+				if (symmetric && column < board.getMirrorColumn(column)) {
+					continue;
+				}
+				int cell = doMove(column, player);
+				if (cell != -1) {
+					int val = -negamax(depth - 1, -MAX_SCORE - 1, MAX_SCORE + 1, player.opponent());
+					if (searchAborted) {
+						// The value of a stopped search is meaningless, so none of the moves get one
+						undoMove(column, cell, player);
+						return new ArrayList<MoveAnalysis>();
+					}
+					int[] variation = getPrincipalVariation(column, depth, player.opponent());
+					undoMove(column, cell, player);
+					analyses[column] = new MoveAnalysis(column, val, variation);
+				}
+			}
+			
+			// In a symmetric position a move is as good as the one across from it
+			if (symmetric) {
+				for (int column = 0; column < GRID_WIDTH; column++) {
+					MoveAnalysis mirror = analyses[board.getMirrorColumn(column)];
+					if (analyses[column] == null && mirror != null) {
+						int[] variation = mirror.getPrincipalVariation();
+						for (int i = 0; i < variation.length; i++) {
+							variation[i] = board.getMirrorColumn(variation[i]);
+						}
+						analyses[column] = new MoveAnalysis(column, mirror.getScore(), variation);
+					}
+				}
+			}
+		}
+		
+		List<MoveAnalysis> result = new ArrayList<MoveAnalysis>();
+		for (MoveAnalysis analysis : analyses) {
+			if (analysis != null) {
+				result.add(analysis);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Follow the best moves stored in the transposition table from the current
+	 * position, which is right after the first move of the variation.
+	 * @param firstMove the move that was just made
+	 * @param length the most moves the variation can have, including the first move
+	 * @param player the player whose turn it is
+	 * @return the moves of the variation
+	 */
+	private int[] getPrincipalVariation(int firstMove, int length, PlayerColor player) {
+		int[] moves = new int[length];
+		moves[0] = firstMove;
+		int count = 1;
+		while (count < length && board.getLastMoveWinner() == PlayerColor.NONE) {
+			int entry = table.probe(getKey(player));
+			if (entry == 0) {
+				break;
+			}
+			int column = toTableColumn(TranspositionTable.getMove(entry));
+			if (!board.doTemporaryMove(column, player)) {
+				break;
+			}
+			moves[count++] = column;
+			player = player.opponent();
+		}
+		
+		// Put the board back the way it was
+		for (int i = count - 1; i > 0; i--) {
+			board.undoTemporaryMove(moves[i]);
+		}
+		return Arrays.copyOf(moves, count);
+	}
+	
+	/**
+	 * Get the best move looking a given amount of moves ahead, along
+	 * with how much work it took to find it.
+	 * @param player which player's move
+	 * @param depth how many moves to look ahead
+	 * @return the column a piece should be dropped into and the statistics of the search
+	 */
+	public SearchResult getSearchResult(PlayerColor player, int depth) {
+		long[] startCounters = getCounters();
+		long startTime = System.nanoTime();
+		int bestMove = getBestMove(player, depth);
+		return new SearchResult(bestMove, getStatistics(startCounters, startTime));
+	}
+	
+	/**
+	 * Get the best move that can be found in a certain amount of time,
+	 * along with how much work it took to find it.
+	 * @param player which player's move
+	 * @param budget how long to search for, at least 1 move ahead is always searched
+	 * @return the column a piece should be dropped into and the statistics of the search
+	 */
+	@Override
+	public SearchResult getSearchResult(PlayerColor player, Duration budget) {
+		long[] startCounters = getCounters();
+		long startTime = System.nanoTime();
+		int bestMove = getBestMove(player, budget);
+		return new SearchResult(bestMove, getStatistics(startCounters, startTime));
+	}
+	
+	/**
+	 * Get all of the counters the statistics are made from, including
+	 * the ones of the other threads. They are only ever added to so the
+	 * work done by a search is the difference from before it.
+	 * @return the nodes, leaves, expanded nodes, cutoffs, first move cutoffs, table probes and table hits
+	 */
+	private long[] getCounters() {
+		long[] counters = new long[7];
+		addCounters(counters);
+		if (rootWorkers != null) {
+			for (ConnectFourAI worker : rootWorkers) {
+				worker.addCounters(counters);
+			}
+		}
+		return counters;
+	}
+	
+	private void addCounters(long[] counters) {
+		counters[0] += nodeCount;
+		counters[1] += leafCount;
+		counters[2] += expandedCount;
+		counters[3] += cutoffCount;
+		counters[4] += firstMoveCutoffCount;
+		counters[5] += table.getHits() + table.getMisses();
+		counters[6] += table.getHits();
 	}
 	
 	/**
-	 * Figure out what the next move should be using the negamax algorithm
+	 * Find the statistics of the search that just finished.
+	 * @param startCounters the counters from before the search
+	 * @param startTime when the search started
+	 * @return the statistics
+	 */
+	private SearchStatistics getStatistics(long[] startCounters, long startTime) {
+		long[] counters = getCounters();
+		return new SearchStatistics(counters[0] - startCounters[0], counters[1] - startCounters[1],
+				completedDepth, counters[2] - startCounters[2], counters[3] - startCounters[3],
+				counters[4] - startCounters[4], counters[5] - startCounters[5], counters[6] - startCounters[6],
+				System.nanoTime() - startTime);
+	}
+	
+	/**
+	 * Stop a search that is running on another thread as if its time ran
+	 * out. Searches keep stopping right away until {@link #resume()} is called.
+	 */
+	public void stop() {
+		stopRequested = true;
+		ConnectFourAI[] workers = rootWorkers;
+		if (workers != null) {
+			for (ConnectFourAI worker : workers) {
+				worker.stopRequested = true;
+			}
+		}
+	}
+	
+	/**
+	 * Let searches use all of their time again after {@link #stop()} was called.
+	 */
+	public void resume() {
+		stopRequested = false;
+		ConnectFourAI[] workers = rootWorkers;
+		if (workers != null) {
+			for (ConnectFourAI worker : workers) {
+				worker.stopRequested = false;
+			}
+		}
+	}
+	
+	/**
+	 * Give the AI a token that stops its searches when it is cancelled. The
+	 * move returned by a cancelled search is meaningless and shouldn't be played.
+	 * @param token the token to check, or null to not use one
+	 */
+	@Override
+	public void setCancellationToken(CancellationToken token) {
+		cancellationToken = token;
+	}
+	
+	/**
+	 * Find the exact result of the current position if both players play
+	 * perfectly, instead of a guess based on how far the AI can look ahead.
+	 * This can take a long time near the start of the game.
+	 * @param player which player's move
+	 * @return the result, including a move that gets it
+	 */
+	public SolverResult solve(PlayerColor player) {
+		if (solver == null) {
+			solver = new ConnectFourSolver(board);
+		}
+		return solver.solve(board, player);
+	}
+	
+	/**
+	 * Search every move from the current position and find the best one,
+	 * using as many threads as were asked for.
+	 * @param depth how many moves to look ahead
+	 * @param player which player's move
+	 * @param firstColumn the column to try first, or -1 to use the normal order
+	 * @return the best column, which can't be trusted if the search was aborted
+	 */
+	private int search(int depth, PlayerColor player, int firstColumn) {
+		if (threadCount > 1) {
+			return searchRootParallel(depth, player, firstColumn);
+		} else if (driver == SearchDriver.MTDF) {
+			return searchRootMtdf(depth, player, firstColumn);
+		}
+		return searchRoot(depth, player, firstColumn);
+	}
+	
+	/**
+	 * Search every move from the current position and find the best one.
+	 * If several moves are equally good the rightmost one is chosen.
+	 * The value of the best move is stored in rootValue.
+	 * @param depth how many moves to look ahead
+	 * @param player which player's move
+	 * @param firstColumn the column to try first, or -1 to use the normal order
+	 * @return the best column, which can't be trusted if the search was aborted
+	 */
+	private int searchRoot(int depth, PlayerColor player, int firstColumn) {
+		searchAborted = false;
+		nodesUntilTimeCheck = NODES_PER_TIME_CHECK;
+		evaluator.reset(board);
+		
+		int bestValue = MIN_SCORE;
+		// No move was found yet, any column is further right than this
+		int bestColumn = -1;
+		boolean searchedMove = false;
+		boolean symmetric = board.isSymmetric();
+		for (int i = -1; i < columnOrder.length && !searchAborted; i++) {
+			int column = (i == -1) ? firstColumn : columnOrder[i];
+			if (column == -1 || (i >= 0 && column == firstColumn)) {
+				continue;
+			}
+			// In a symmetric position a move on the left ties with the one
+			// across from it, which wins the tie since it is further right
+			if (symmetric && column < board.getMirrorColumn(column)) {
+				continue;
+			}
+			
+			int cell = doMove(column, player);
+			if (cell != -1) {
+				int val;
+				if (driver == SearchDriver.PVS && searchedMove) {
+					// First only check if the move would be chosen over the best
+					// move so far, and only find its exact value if it would
+					int needed = (column > bestColumn) ? bestValue : bestValue + 1;
+					val = -negamax(depth - 1, -needed, -(needed - 1), player.opponent());
+					if (val >= needed && !searchAborted) {
+						val = -negamax(depth - 1, -MAX_SCORE - 1, -(needed - 1), player.opponent());
+					}
+				} else {
+					// Searching with an alpha one below the best value means a move
+					// that ties with it gets an exact score instead of a bound, so
+					// ties are broken the same way no matter what order is used
+					val = -negamax(depth - 1, -MAX_SCORE - 1, -(bestValue - 1), player.opponent());
+				}
+				undoMove(column, cell, player);
+				searchedMove = true;
+				if (!searchAborted && (val > bestValue || (val == bestValue && column > bestColumn))) {
+					bestValue = val;
+					bestColumn = column;
+				}
+			}
+		}
+		
+		if (bestColumn == -1) {
+			// Stopped before a single move was searched
+			return getFallbackColumn(player);
+		}
+		if (!searchAborted) {
+			table.store(getKey(player), bestValue, depth, TranspositionTable.EXACT, toTableColumn(bestColumn));
+		}
+		rootValue = bestValue;
+		return bestColumn;
+	}
+	
+	/**
+	 * Search the current position with MTD(f) and find the best move.
+	 * The value of the position is found first with zero window searches,
+	 * then the moves are checked from right to left until one of them gets
+	 * that value, so ties are broken the same way as {@link #searchRoot(int, PlayerColor, int)}.
+	 * The value of the best move is stored in rootValue.
+	 * @param depth how many moves to look ahead
+	 * @param player which player's move
+	 * @param firstColumn the best move of a shallower search, or -1 if there wasn't one
+	 * @return the best column, which can't be trusted if the search was aborted
+	 */
+	private int searchRootMtdf(int depth, PlayerColor player, int firstColumn) {
+		searchAborted = false;
+		nodesUntilTimeCheck = NODES_PER_TIME_CHECK;
+		evaluator.reset(board);
+		
+		// The closer the first guess is the fewer searches it takes, and the value
+		// of a shallower search is usually closer than the value of the board
+		int value = (firstColumn == -1) ? evaluateBoard(player) : rootValue;
+		int lowerBound = MIN_SCORE;
+		int upperBound = MAX_SCORE;
+		while (lowerBound < upperBound && !searchAborted) {
+			int beta = (value == lowerBound) ? value + 1 : value;
+			value = negamax(depth, beta - 1, beta, player);
+			if (value < beta) {
+				upperBound = value;
+			} else {
+				lowerBound = value;
+			}
+		}
+		
+		int bestColumn = -1;
+		boolean symmetric = board.isSymmetric();
+		for (int column = GRID_WIDTH - 1; column >= 0 && !searchAborted; column--) {
+			// A move on the left of a symmetric position isn't worth more than the one
+			// across from it, which was already checked
+			if (symmetric && column < board.getMirrorColumn(column)) {
+				break;
+			}
+			int cell = doMove(column, player);
+			if (cell != -1) {
+				// None of the moves are better so the first one that
+				// isn't worse has the value of the position
+				int val = -negamax(depth - 1, -value, -(value - 1), player.opponent());
+				undoMove(column, cell, player);
+				if (val >= value) {
+					bestColumn = column;
+					break;
+				}
+			}
+		}
+		
+		if (bestColumn == -1) {
+			// Stopped before the move with the value was found
+			return getFallbackColumn(player);
+		}
+		if (!searchAborted) {
+			table.store(getKey(player), value, depth, TranspositionTable.EXACT, toTableColumn(bestColumn));
+		}
+		rootValue = value;
+		return bestColumn;
+	}
+	
+	/**
+	 * Search every move from the current position at the same time and find the
+	 * best one. The best value found so far is shared with the workers, and a move
+	 * that starts after it was found is searched with an alpha one below it. So
+	 * its value is exact if it ties with or beats that value, and otherwise it is
+	 * only a bound that is too low to be chosen. That means the same move is chosen
+	 * as {@link #searchRoot(int, PlayerColor, int)}. MTD(f) isn't used here, each
+	 * move's worker searches below it the same way as {@link SearchDriver#NEGAMAX}.
+	 * The value of the best move is stored in rootValue.
+	 * @param depth how many moves to look ahead
+	 * @param player which player's move
+	 * @param firstColumn the column to start searching first, or -1 to use the normal order
+	 * @return the best column, which can't be trusted if the search was aborted
+	 */
+	private int searchRootParallel(final int depth, final PlayerColor player, int firstColumn) {
+		searchAborted = false;
+		if (pool == null) {
+			startWorkers();
+		}
+		
+		// Give every legal move to its own worker. The moves start in the order they
+		// are given, so the best move of a shallower search starts first and the
+		// others are more likely to start with its value as their alpha
+		final AtomicInteger sharedBest = new AtomicInteger(MIN_SCORE);
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		List<Integer> columns = new ArrayList<Integer>();
+		boolean symmetric = board.isSymmetric();
+		BoardSnapshot position = board.snapshot();
+		for (int i = -1; i < columnOrder.length; i++) {
+			final int column = (i == -1) ? firstColumn : columnOrder[i];
+			if (column == -1 || (i >= 0 && column == firstColumn)) {
+				continue;
+			}
+			// A move on the left of a symmetric position ties with the one across from it
+			if (board.getColumnSpace(column) == 0 || (symmetric && column < board.getMirrorColumn(column))) {
+				continue;
+			}
+			
+			final ConnectFourAI worker = rootWorkers[column];
+			worker.board.restore(position);
+			worker.deadline = deadline;
+			worker.useDeadline = useDeadline;
+			worker.cancellationToken = cancellationToken;
+			// Workers made since stop() was called have to stop too
+			worker.stopRequested = stopRequested;
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					int val = worker.searchMove(column, depth, player, sharedBest.get() - 1);
+					if (!worker.searchAborted) {
+						// Let the moves that haven't started yet use it as their alpha
+						int best = sharedBest.get();
+						while (val > best && !sharedBest.compareAndSet(best, val)) {
+							best = sharedBest.get();
+						}
+					}
+					return val;
+				}
+			});
+			columns.add(column);
+		}
+		
+		List<Future<Integer>> results = pool.invokeAll(tasks);
+		
+		int bestValue = MIN_SCORE;
+		int bestColumn = -1;
+		for (int i = 0; i < results.size(); i++) {
+			int column = columns.get(i);
+			int val;
+			try {
+				val = results.get(i).get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IllegalStateException("A search worker failed", e);
+			}
+			if (rootWorkers[column].searchAborted) {
+				searchAborted = true;
+			} else if (val > bestValue || (val == bestValue && column > bestColumn)) {
+				bestValue = val;
+				bestColumn = column;
+			}
+		}
+		
+		if (bestColumn == -1) {
+			// Every worker was stopped before it finished
+			return getFallbackColumn(player);
+		}
+		rootValue = bestValue;
+		return bestColumn;
+	}
+	
+	/**
+	 * Find the value of a single move from the current position.
+	 * This is what each worker does when searching with more than one thread.
+	 * @param column the column of the move
+	 * @param depth how many moves to look ahead, including this one
+	 * @param player which player's move
+	 * @param alpha the value the player is already guaranteed by another move
+	 * @return the value of the move for the player, which is only an upper bound if it is at or below alpha
+	 */
+	private int searchMove(int column, int depth, PlayerColor player, int alpha) {
+		searchAborted = false;
+		nodesUntilTimeCheck = NODES_PER_TIME_CHECK;
+		newSearch();
+		evaluator.reset(board);
+		
+		int cell = doMove(column, player);
+		int val = -negamax(depth - 1, -MAX_SCORE - 1, -alpha, player.opponent());
+		undoMove(column, cell, player);
+		return val;
+	}
+	
+	/**
+	 * Find a move to use when a search is stopped before it finds one, so the
+	 * column returned is always legal even if the move can't be trusted.
+	 * @param player which player's move
+	 * @return the best move stored for the current position if there is one,
+	 * otherwise the first column with room, or 0 if the board is full
+	 */
+	private int getFallbackColumn(PlayerColor player) {
+		int entry = table.probe(getKey(player));
+		if (entry != 0) {
+			int column = toTableColumn(TranspositionTable.getMove(entry));
+			if (board.getColumnSpace(column) > 0) {
+				return column;
+			}
+		}
+		for (int column = 0; column < GRID_WIDTH; column++) {
+			if (board.getColumnSpace(column) > 0) {
+				return column;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Get ready for searching a new position. What was learned about the
+	 * order of the moves in the last position is only partly kept since
+	 * the killer moves are for different plies now and the history is old.
+	 */
+	private void newSearch() {
+		table.newSearch();
+		clearKillerMoves();
+		for (int[][] playerHistory : history) {
+			for (int[] columnHistory : playerHistory) {
+				for (int row = 0; row < columnHistory.length; row++) {
+					columnHistory[row] /= 2;
+				}
+			}
+		}
+	}
+	
+	private void clearKillerMoves() {
+		for (int[] killers : killerMoves) {
+			killers[0] = -1;
+			killers[1] = -1;
+		}
+	}
+	
+	/**
+	 * Put the moves of the current position in the order they should be tried.
+	 * The move from the transposition table always goes first. If the ordering
+	 * is learned it is followed by the killer moves of this ply and then the rest
+	 * sorted by the history table, otherwise the rest keep the column order.
+	 * Full columns are left out.
+	 * @param ply how many pieces are on the board
+	 * @param tableMove the best move from the transposition table, or -1
+	 * @param player the player whose turn it is
+	 * @param allowed the spots that moves can land on, moves landing anywhere else are left out
+	 * @return how many moves were put in orderedMoves[ply]
+	 */
+	private int orderMoves(int ply, int tableMove, PlayerColor player, long allowed) {
+		int[] moves = orderedMoves[ply];
+		int[] scores = orderedScores[ply];
+		int[] killers = killerMoves[ply];
+		int[][] playerHistory = history[(player == PlayerColor.RED) ? 1 : 0];
+		boolean learned = ordering.isLearned();
+		
+		// Insertion sort is used since there are only a few moves, and since
+		// it is stable moves with the same score keep the column order
+		int allowedColumns = 0;
+		for (long spots = allowed; spots != 0; spots &= spots - 1) {
+			allowedColumns |= 1 << board.getSpotColumn(spots);
+		}
+		
+		int moveCount = 0;
+		for (int column : columnOrder) {
+			if ((allowedColumns & (1 << column)) == 0) {
+				continue;
+			}
+			int space = board.getColumnSpace(column);
+			
+			int score = 0;
+			if (column == tableMove) {
+				score = Integer.MAX_VALUE;
+			} else if (learned && column == killers[0]) {
+				score = Integer.MAX_VALUE - 1;
+			} else if (learned && column == killers[1]) {
+				score = Integer.MAX_VALUE - 2;
+			} else if (learned) {
+				score = playerHistory[column][space - 1];
+			}
+			
+			int pos = moveCount++;
+			while (pos > 0 && scores[pos - 1] < score) {
+				moves[pos] = moves[pos - 1];
+				scores[pos] = scores[pos - 1];
+				pos--;
+			}
+			moves[pos] = column;
+			scores[pos] = score;
+		}
+		return moveCount;
+	}
+	
+	/**
+	 * Remember a move that caused a cutoff so it is tried earlier next time.
+	 * Deeper searches are worth more since they cut off more of the tree.
+	 * @param ply how many pieces are on the board
+	 * @param column the column of the move
+	 * @param row the row the piece landed in
+	 * @param depth how deep the search of the position was
+	 * @param player the player who made the move
+	 */
+	private void recordCutoff(int ply, int column, int row, int depth, PlayerColor player) {
+		int[] killers = killerMoves[ply];
+		if (killers[0] != column) {
+			killers[1] = killers[0];
+			killers[0] = column;
+		}
+		history[(player == PlayerColor.RED) ? 1 : 0][column][row] += depth * depth;
+	}
+	
+	/**
+	 * Drop a piece without notifying observers and update the evaluator.
+	 * @param column the column to drop the piece into
+	 * @param player the color of the piece
+	 * @return the cell index the piece landed in, or -1 if the column is full
+	 */
+	private int doMove(int column, PlayerColor player) {
+		// Use temporary moves to avoid the overhead of updating observers
+		if (!board.doTemporaryMove(column, player)) {
+			return -1;
+		}
+		int cell = board.getLastMoveCell();
+		evaluator.addPiece(cell, player);
+		return cell;
+	}
+	
+	/**
+	 * Undo a move made with {@link #doMove(int, PlayerColor)}.
+	 * @param column the column of the move
+	 * @param cell the cell index the piece landed in
+	 * @param player the color of the piece
+	 */
+	private void undoMove(int column, int cell, PlayerColor player) {
+		board.undoTemporaryMove(column);
+		evaluator.removePiece(cell, player);
+	}
+	
+	/**
+	 * Count a searched node and check if the time ran out or the search
+	 * was stopped or cancelled. This is only checked every so often
+	 * since getting the time is slow.
+	 * @return true if the search should stop
+	 */
+	private boolean outOfTime() {
+		if (--nodesUntilTimeCheck <= 0) {
+			nodesUntilTimeCheck = NODES_PER_TIME_CHECK;
+			if (stopRequested || (cancellationToken != null && cancellationToken.isCancelled())
+					|| (useDeadline && System.nanoTime() - deadline > 0)) {
+				searchAborted = true;
+			}
+		}
+		return searchAborted;
+	}
+	
+	/**
+	 * Get the key used to look up the current position in the transposition table.
+	 * The same pieces with a different player's turn are a different position,
+	 * but a position and its mirror image share a key.
+	 * @param player the player whose turn it is
+	 * @return the key
+	 */
+	private long getKey(PlayerColor player) {
+		return board.getCanonicalHash() ^ ((player == PlayerColor.RED) ? RED_TO_MOVE_KEY : 0);
+	}
+	
+	/**
+	 * Turn a column of the board into the column stored in the transposition
+	 * table for the current position, or the other way around. Positions are
+	 * stored the way their canonical hash has them, so if that is the mirror
+	 * image the moves are mirrored too.
+	 * @param column the column
+	 * @return the column in the other orientation
+	 */
+	private int toTableColumn(int column) {
+		return board.isMirrorCanonical() ? board.getMirrorColumn(column) : column;
+	}
+	
+	/**
+	 * Figure out the value of the current node using the negamax algorithm
+	 * with alpha-beta pruning. Values outside of the alpha-beta window are only
+	 * bounds: a value at or below alpha means the real value is at most that, and
+	 * a value at or above beta means the real value is at least that.
 	 * @param depth the current depth in the game tree
-	 * @param move the move used to get to this node (the column)
+	 * @param alpha the value the current player is already guaranteed elsewhere
+	 * @param beta the value the opponent is already guaranteed elsewhere
 	 * @param player the player whose turn it is
-	 * @return
+	 * @return the value of this node for the current player
 	 */
-	private int negamax(int depth, int move, PlayerColor player) {
+	private int negamax(int depth, int alpha, int beta, PlayerColor player) {
 		// The negamax algorithm was based on the one found here
 		// http://en.wikipedia.org/wiki/Negamax
 		
-		PlayerColor winner = board.getWinner();
+		nodeCount++;
+		
+		// Only the move used to get to this node could have won the game
+		PlayerColor winner = board.getLastMoveWinner();
 		
 		if (winner == player) {
 			// If the current player won, it is the best possible outcome
@@ -70,109 +1163,130 @@ public class ConnectFourAI {
 		
 		// If at the maximum depth evaluate this node
 		if (depth == 0) {
+			leafCount++;
 			return evaluateBoard(player);
 		}
-		// Find the best value of all child nodes
+		
+		// If the current player can win right away nothing else matters
+		long playable = board.getPlayableMask();
+		long threats = board.getThreatMask(player);
+		if ((threats & playable) != 0) {
+			return MAX_SCORE;
+		}
+		
+		// A move that lets the opponent win right away loses, so when the search
+		// can see that far those moves can be left out without changing the value
+		long allowed = playable;
+		if (depth >= 2) {
+			long opponentThreats = board.getThreatMask(player.opponent());
+			long forced = opponentThreats & playable;
+			if (forced != 0) {
+				if ((forced & (forced - 1)) != 0) {
+					// The opponent can win in two places and only one can be blocked
+					return MIN_SCORE;
+				}
+				allowed = forced;
+			}
+			// Don't play right under a spot the opponent could win on
+			allowed &= ~(opponentThreats >>> 1);
+			if (allowed == 0) {
+				return MIN_SCORE;
+			}
+		}
+		
+		// If the time ran out the value doesn't matter since it will be thrown away
+		if (outOfTime()) {
+			return 0;
+		}
+		// If this position was already searched deep enough the result can be
+		// reused, or at least it could narrow down the window
+		long key = getKey(player);
+		int entry = table.probe(key);
+		int tableMove = -1;
+		if (entry != 0) {
+			tableMove = toTableColumn(TranspositionTable.getMove(entry));
+			if (TranspositionTable.getDepth(entry) >= depth) {
+				int score = TranspositionTable.getScore(entry);
+				int bound = TranspositionTable.getBound(entry);
+				if (bound == TranspositionTable.EXACT) {
+					return score;
+				} else if (bound == TranspositionTable.LOWER_BOUND && score >= beta) {
+					return score;
+				} else if (bound == TranspositionTable.UPPER_BOUND && score <= alpha) {
+					return score;
+				}
+			}
+		}
+		
+		// Find the best value of all child nodes, starting with the
+		// best move found the last time this position was searched
+		int ply = board.getCellCount() - board.getPieceCount(PlayerColor.NONE);
+		int moveCount = orderMoves(ply, tableMove, player, allowed);
+		int[] moves = orderedMoves[ply];
+		expandedCount++;
+		int originalAlpha = alpha;
 		int bestValue = MIN_SCORE;
 		int bestColumn = 0;
-		for (int column = 0; column < GRID_WIDTH; column++) {
-			// Use temporary moves to avoid the overhead of updating observers
-			if (board.doTemporaryMove(column, player)) {
-				int val = -negamax(depth - 1, column, player.opponent());
-				if (val >= bestValue) {
-					bestValue = val;
-					bestColumn = column;
+		int bestCell = -1;
+		int movesSearched = 0;
+		for (int i = 0; i < moveCount && alpha < beta; i++) {
+			int column = moves[i];
+			int cell = doMove(column, player);
+			int val;
+			if (driver == SearchDriver.PVS && movesSearched > 0) {
+				// The first move is expected to be the best so the rest are
+				// only checked to be worse, unless they turn out not to be
+				val = -negamax(depth - 1, -alpha - 1, -alpha, player.opponent());
+				if (val > alpha && val < beta && !searchAborted) {
+					val = -negamax(depth - 1, -beta, -alpha, player.opponent());
 				}
-				board.undoTemporaryMove(column);
+			} else {
+				val = -negamax(depth - 1, -beta, -alpha, player.opponent());
+			}
+			undoMove(column, cell, player);
+			if (searchAborted) {
+				return 0;
+			}
+			movesSearched++;
+			if (val > bestValue || movesSearched == 1) {
+				bestValue = val;
+				bestColumn = column;
+				bestCell = cell;
+			}
+			// If the opponent would never let the game get here the loop
+			// stops since there is no point in looking at the rest of the moves
+			if (bestValue > alpha) {
+				alpha = bestValue;
 			}
 		}
 		
-		// The best move overall will be the last time bestMove is set
-		// to bestColumn
-		bestMove = bestColumn;
+		// Values outside the window are only bounds
+		int bound = TranspositionTable.EXACT;
+		if (bestValue <= originalAlpha) {
+			bound = TranspositionTable.UPPER_BOUND;
+		} else if (bestValue >= beta) {
+			bound = TranspositionTable.LOWER_BOUND;
+			cutoffCount++;
+			if (movesSearched == 1) {
+				firstMoveCutoffCount++;
+			}
+			// A forced move doesn't say anything about which moves are good elsewhere
+			if (moveCount > 1) {
+				recordCutoff(ply, bestColumn, board.getCellY(bestCell), depth, player);
+			}
+		}
+		table.store(key, bestValue, depth, bound, toTableColumn(bestColumn));
+		
 		return bestValue;
 	}
 	
 	/**
 	 * Evaluate the value of the board from the current player's perspective.
+	 * The evaluator already kept track of every move so this is just a lookup.
 	 * @param player the current player
 	 * @return a score with higher values more favorable to the current player
 	 */
 	private int evaluateBoard(PlayerColor player) {
-		// Check each possible connect four and how much progress the player made in
-		// getting them
-		int totalValue = 0;
-		
-		// Horizontals
-		totalValue += getConnectFoursValue(0, GRID_WIDTH-3, GRID_HEIGHT, 1, 0, player);
-		
-		// Verticals
-		totalValue += getConnectFoursValue(0, GRID_WIDTH, GRID_HEIGHT-3, 0, 1, player);
-		
-		// \ Diagonals
-		totalValue += getConnectFoursValue(0, GRID_WIDTH- 3, GRID_HEIGHT-3, 1, 1, player);
-				
-		// / Diagonals
-		totalValue += getConnectFoursValue(3, GRID_WIDTH, GRID_HEIGHT-3, -1, 1, player);	
-		
-		return totalValue;
-	}
-	
-	/**
-	 * Get the total value of the specified connect fours from
-	 * a given players perspective.
-	 * @param startX the X value to start at
-	 * @param maxX the maximum X value to look at
-	 * @param maxY the maximum Y value to look at
-	 * @param dx the connect fours will be added in this X direction
-	 * @param dy the connect fours will be added in this Y direction
-	 * @param player the better the board is for this player, the higher the score will be
-	 */
-	private int getConnectFoursValue(int startX, int maxX, int maxY, int dx, int dy, PlayerColor player) {
-		int totalValue = 0;
-		
-		// Loop through the specified region
-		for (int x = startX; x < maxX; x++) {
-			for (int y = 0; y < maxY; y++) {
-				// Check a connect four staring at the point x, y
-				// and going in the direction of dx, dy
-				PlayerColor connectFourPlayer = PlayerColor.NONE;
-				int currentValue = 0;
-				boolean connectFourValid = true;
-				for (int i = 0; i < 4; i++) {
-					PlayerColor currentPiece = board.getGridPiece(new Position(x + i * dx, y + i * dy));
-					// Make sure the connect four is made out of all the same color
-					if (connectFourPlayer == PlayerColor.NONE) {
-						connectFourPlayer = currentPiece;
-					}
-					if (currentPiece != PlayerColor.NONE) {
-						if (connectFourPlayer == currentPiece) {
-							// For every part of the connect four that contains the current players
-							// increase the value
-							currentValue++;
-						} else {
-							// If the connect four contains another color it is useless
-							connectFourValid = false;
-						}
-					}
-				}
-				
-				// If the connect four is valid either increase the score
-				// if the connect four belongs to the current player or decrease
-				// the score otherwise
-				if (connectFourValid) {
-					if (connectFourPlayer == player) {
-						// The value of a partially completed connect four is
-						// approximately proportional to the square of how many pieces
-						// are in it because more pieces are a lot better
-						totalValue += currentValue*currentValue;
-					} else {
-						totalValue -= currentValue*currentValue;
-					}
-				}
-			}
-		}
-		
-		return totalValue;
+		return evaluator.evaluate(player);
 	}
 }
@@ -0,0 +1,475 @@
+package se2aa4;
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectFourAITest {
+
+	static final int REFERENCE_MAX_SCORE = 10000;
+	static final int REFERENCE_MIN_SCORE = -10000;
+
+	static BoardModel[] positions; //the positions to compare on
+	static PlayerColor[] players; //whose turn it is in each position
+
+	@Before
+	public void setUp() throws Exception {
+		//play random games for a random amount of moves,
+		//always using the same seed so the positions are the same every time
+		Random random = new Random(4);
+		positions = new BoardModel[40];
+		players = new PlayerColor[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			BoardModel board = new BoardModel();
+			PlayerColor player = PlayerColor.RED;
+			int moves = random.nextInt(20);
+			for (int j = 0; j < moves; j++) {
+				int column = random.nextInt(7);
+				if (board.doTemporaryMove(column, player)) {
+					if (board.getWinner() != PlayerColor.NONE)
+						board.undoTemporaryMove(column); //don't finish the game
+					else
+						player = player.opponent();
+				}
+			}
+			positions[i] = board;
+			players[i] = player;
+		}
+	}
+
+	@Test
+	public void testGetBestMoveMatchesNegamax() {
+		for (int i = 0; i < positions.length; i++) {
+			int expected = referenceBestMove(positions[i].copy(), 5, players[i]);
+			ConnectFourAI ai = new ConnectFourAI(positions[i].copy());
+			assertEquals("position " + i, expected, ai.getBestMove(players[i], 5));
+		}
+	}
+
+	@Test
+	public void testGetBestMoveMatchesNegamaxFullDepth() {
+		//the default depth is slow without pruning so only check a few
+		for (int i = 0; i < 4; i++) {
+			int expected = referenceBestMove(positions[i].copy(), 7, players[i]);
+			ConnectFourAI ai = new ConnectFourAI(positions[i].copy());
+			assertEquals("position " + i, expected, ai.getBestMove(players[i]));
+		}
+	}
+
+	@Test
+	public void testMoveOrderingDoesNotChangeMove() {
+		for (int i = 0; i < positions.length; i++) {
+			ConnectFourAI centerFirst = new ConnectFourAI(positions[i].copy());
+			centerFirst.setMoveOrdering(MoveOrdering.CENTER_FIRST);
+			ConnectFourAI leftToRight = new ConnectFourAI(positions[i].copy());
+			leftToRight.setMoveOrdering(MoveOrdering.LEFT_TO_RIGHT);
+			ConnectFourAI killerHistory = new ConnectFourAI(positions[i].copy());
+			killerHistory.setMoveOrdering(MoveOrdering.KILLER_HISTORY);
+			assertEquals("position " + i, leftToRight.getBestMove(players[i], 5), centerFirst.getBestMove(players[i], 5));
+			assertEquals("position " + i, centerFirst.getBestMove(players[i], 5), killerHistory.getBestMove(players[i], 5));
+		}
+	}
+
+	@Test
+	public void testReusedAIMatchesNewAI() {
+		//after a new game the same AI can be moved to any position
+		ConnectFourAI engine = new ConnectFourAI(new BoardModel());
+		for (int i = 0; i < positions.length; i++) {
+			engine.newGame();
+			engine.setPosition(positions[i]);
+			int expected = new ConnectFourAI(positions[i].copy()).getBestMove(players[i], 5);
+			assertEquals("position " + i, expected, engine.getBestMove(players[i], 5));
+		}
+	}
+
+	@Test
+	public void testPlayMove() {
+		//playing the moves one at a time gets to the same position as setting it
+		ConnectFourAI engine = new ConnectFourAI(new BoardModel());
+		BoardModel board = new BoardModel();
+		PlayerColor player = PlayerColor.RED;
+		for (int column : new int[] {3, 3, 2, 4, 4}) {
+			assertTrue(engine.playMove(column, player));
+			board.doTemporaryMove(column, player);
+			player = player.opponent();
+		}
+		ConnectFourAI fresh = new ConnectFourAI(board);
+		assertEquals(fresh.getBestMove(player, 6), engine.getBestMove(player, 6));
+	}
+
+	@Test
+	public void testGetSearchResult() {
+		ConnectFourAI ai = new ConnectFourAI(positions[0].copy());
+		SearchResult result = ai.getSearchResult(players[0], 5);
+		SearchStatistics statistics = result.getStatistics();
+		assertEquals(new ConnectFourAI(positions[0].copy()).getBestMove(players[0], 5), result.getBestMove());
+		assertEquals(5, statistics.getDepth());
+		assertEquals(ai.getNodeCount(), statistics.getNodes());
+		assertTrue(statistics.getLeaves() > 0 && statistics.getLeaves() < statistics.getNodes());
+		//only the nodes that searched their moves count towards the cutoff rate
+		assertTrue(statistics.getExpandedNodes() > 0);
+		assertTrue(statistics.getExpandedNodes() + statistics.getLeaves() <= statistics.getNodes());
+		assertTrue(statistics.getCutoffs() <= statistics.getExpandedNodes());
+		assertTrue(statistics.getCutoffRate() > 0 && statistics.getCutoffRate() <= 1);
+		assertTrue(statistics.getTableHitRate() >= 0 && statistics.getTableHitRate() <= 1);
+		//adding counts both searches
+		SearchStatistics total = statistics.add(ai.getSearchResult(players[0], 5).getStatistics());
+		assertEquals(2, total.getSearchCount());
+		assertEquals(ai.getNodeCount(), total.getNodes());
+	}
+
+	@Test
+	public void testAnalyze() {
+		for (int i = 0; i < 10; i++) {
+			ConnectFourAI ai = new ConnectFourAI(positions[i].copy());
+			List<MoveAnalysis> analyses = ai.analyze(players[i], 4);
+			int bestColumn = -1;
+			int bestScore = Integer.MIN_VALUE;
+			for (MoveAnalysis analysis : analyses) {
+				//every score is exact
+				BoardModel board = positions[i].copy();
+				board.doTemporaryMove(analysis.getColumn(), players[i]);
+				int expected = -referenceNegamax(board, 3, players[i].opponent());
+				assertEquals("position " + i, expected, analysis.getScore());
+				assertEquals(analysis.getColumn(), analysis.getPrincipalVariation()[0]);
+				if (analysis.getScore() >= bestScore) {
+					bestScore = analysis.getScore();
+					bestColumn = analysis.getColumn();
+				}
+			}
+			assertEquals("position " + i, new ConnectFourAI(positions[i].copy()).getBestMove(players[i], 4), bestColumn);
+		}
+	}
+
+	@Test
+	public void testAnalyzeSymmetricPosition() {
+		BoardModel board = new BoardModel();
+		board.doTemporaryMove(3, PlayerColor.RED);
+		board.doTemporaryMove(3, PlayerColor.BLUE);
+		List<MoveAnalysis> analyses = new ConnectFourAI(board.copy()).analyze(PlayerColor.RED, 4);
+		assertEquals(7, analyses.size());
+		for (MoveAnalysis analysis : analyses) {
+			//mirrored moves get the same score and a mirrored variation
+			MoveAnalysis mirror = analyses.get(6 - analysis.getColumn());
+			assertEquals(analysis.getScore(), mirror.getScore());
+			int[] variation = analysis.getPrincipalVariation();
+			int[] mirrorVariation = mirror.getPrincipalVariation();
+			BoardModel after = board.copy();
+			after.doTemporaryMove(analysis.getColumn(), PlayerColor.RED);
+			assertEquals(-referenceNegamax(after, 3, PlayerColor.BLUE), analysis.getScore());
+			if (analysis.getColumn() != 3) {
+				assertEquals(variation.length, mirrorVariation.length);
+				for (int i = 0; i < variation.length; i++)
+					assertEquals(6 - variation[i], mirrorVariation[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testStoppedAnalyzeIsEmpty() {
+		//a stopped search can't give any scores, not even made up ones
+		ConnectFourAI stopped = new ConnectFourAI(new BoardModel());
+		stopped.stop();
+		assertTrue(stopped.analyze(PlayerColor.RED, 9).isEmpty());
+		ConnectFourAI cancelled = new ConnectFourAI(new BoardModel());
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		cancelled.setCancellationToken(token);
+		assertTrue(cancelled.analyze(PlayerColor.RED, 9).isEmpty());
+		//once it can search again every move gets its score
+		stopped.resume();
+		assertEquals(7, stopped.analyze(PlayerColor.RED, 4).size());
+	}
+
+	@Test
+	public void testSearchComplete() {
+		//an empty board can't be searched to the end in a moment
+		ConnectFourAI ai = new ConnectFourAI(new BoardModel());
+		ai.getBestMove(PlayerColor.RED, Duration.ofMillis(20));
+		assertFalse(ai.isSearchComplete());
+		//but a tiny board can, and searching longer won't change anything
+		ai = new ConnectFourAI(new BoardModel(3, 2, 3));
+		ai.getBestMove(PlayerColor.RED, Duration.ofSeconds(5));
+		assertTrue(ai.isSearchComplete());
+	}
+
+	@Test
+	public void testOtherBoardSizesMatchNegamax() {
+		//the biggest board that fits in a bitboard, and a longer winning line
+		int[][] sizes = {{8, 7, 4}, {7, 6, 5}};
+		Random random = new Random(9);
+		for (int[] size : sizes) {
+			for (int i = 0; i < 10; i++) {
+				BoardModel board = new BoardModel(size[0], size[1], size[2]);
+				PlayerColor player = PlayerColor.RED;
+				int moves = random.nextInt(20);
+				for (int j = 0; j < moves; j++) {
+					int column = random.nextInt(size[0]);
+					if (board.doTemporaryMove(column, player)) {
+						if (board.getWinner() != PlayerColor.NONE)
+							board.undoTemporaryMove(column); //don't finish the game
+						else
+							player = player.opponent();
+					}
+				}
+				ConnectFourAI ai = new ConnectFourAI(board.copy());
+				assertEquals(size[2] + " in a row, position " + i, referenceBestMove(board.copy(), 4, player), ai.getBestMove(player, 4));
+			}
+		}
+	}
+
+	@Test
+	public void testMirroredPositionMatchesNegamax() {
+		for (int i = 0; i < 10; i++) {
+			//the mirror image shares table entries but still gets its own best move
+			BoardModel mirror = new BoardModel();
+			for (int x = 0; x < 7; x++)
+				for (int y = 0; y < 6; y++)
+					mirror.setGridPiece(new Position(6 - x, y), positions[i].getGridPiece(new Position(x, y)));
+			ConnectFourAI ai = new ConnectFourAI(positions[i].copy());
+			ai.getBestMove(players[i], 5);
+			ai.setPosition(mirror);
+			assertEquals("position " + i, referenceBestMove(mirror.copy(), 5, players[i]), ai.getBestMove(players[i], 5));
+		}
+	}
+
+	@Test
+	public void testCancelledSearchStops() {
+		//a search that would take a very long time stops right away
+		ConnectFourAI ai = new ConnectFourAI(new BoardModel());
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		ai.setCancellationToken(token);
+		long startTime = System.nanoTime();
+		ai.getBestMove(PlayerColor.RED, 40);
+		assertTrue(System.nanoTime() - startTime < 1000000000L);
+	}
+
+	@Test
+	public void testStoppedSearchGivesLegalMove() {
+		//the first column is full, so a search stopped before it found
+		//a move still has to give one of the others
+		BoardModel board = new BoardModel();
+		for (int y = 0; y < 6; y++)
+			board.doMove(0, (y % 2 == 0) ? PlayerColor.RED : PlayerColor.BLUE);
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		for (SearchDriver driver : SearchDriver.values()) {
+			ConnectFourAI ai = new ConnectFourAI(board, driver);
+			ai.setCancellationToken(token);
+			assertTrue(driver.toString(), board.getColumnSpace(ai.getBestMove(PlayerColor.RED, 40)) > 0);
+		}
+		ConnectFourAI parallel = new ConnectFourAI(board, 4);
+		parallel.setThreadCount(4);
+		parallel.setCancellationToken(token);
+		assertTrue(board.getColumnSpace(parallel.getBestMove(PlayerColor.RED, 40)) > 0);
+		parallel.setThreadCount(1);
+	}
+
+	@Test
+	public void testSearchDriversMatchNegamax() {
+		for (int i = 0; i < positions.length; i++) {
+			int expected = new ConnectFourAI(positions[i].copy()).getBestMove(players[i], 5);
+			ConnectFourAI pvs = new ConnectFourAI(positions[i].copy(), SearchDriver.PVS);
+			ConnectFourAI mtdf = new ConnectFourAI(positions[i].copy(), SearchDriver.MTDF);
+			assertEquals("position " + i, expected, pvs.getBestMove(players[i], 5));
+			assertEquals("position " + i, expected, mtdf.getBestMove(players[i], 5));
+		}
+	}
+
+	@Test
+	public void testKillerHistoryMatchesNegamax() {
+		//the learned order only changes how fast the answer is found,
+		//how much faster is left to AIBenchmark
+		for (int i = 0; i < positions.length; i++) {
+			ConnectFourAI killerHistory = new ConnectFourAI(positions[i].copy());
+			killerHistory.setMoveOrdering(MoveOrdering.KILLER_HISTORY);
+			assertEquals("position " + i, referenceBestMove(positions[i].copy(), 5, players[i]),
+					killerHistory.getBestMove(players[i], 5));
+			//the killer moves and history left by that search are used for the scores
+			for (MoveAnalysis analysis : killerHistory.analyze(players[i], 5)) {
+				BoardModel board = positions[i].copy();
+				board.doTemporaryMove(analysis.getColumn(), players[i]);
+				assertEquals("position " + i, -referenceNegamax(board, 4, players[i].opponent()), analysis.getScore());
+			}
+		}
+	}
+
+	@Test
+	public void testParallelSearchMatchesSerial() {
+		for (int i = 0; i < positions.length; i++) {
+			ConnectFourAI serial = new ConnectFourAI(positions[i].copy());
+			ConnectFourAI parallel = new ConnectFourAI(positions[i].copy(), 4);
+			parallel.setThreadCount(4);
+			assertEquals("position " + i, serial.getBestMove(players[i], 6), parallel.getBestMove(players[i], 6));
+			parallel.setThreadCount(1);
+		}
+	}
+
+	@Test
+	public void testParallelMtdfMatchesSerial() {
+		//with threads MTD(f) falls back to searching the root moves all at once
+		for (int i = 0; i < positions.length; i++) {
+			ConnectFourAI serial = new ConnectFourAI(positions[i].copy(), SearchDriver.MTDF);
+			ConnectFourAI parallel = new ConnectFourAI(positions[i].copy(), 4, SearchDriver.MTDF);
+			parallel.setThreadCount(4);
+			assertEquals("position " + i, serial.getBestMove(players[i], 6), parallel.getBestMove(players[i], 6));
+			//the timed search gives each depth the move of the one before
+			assertTrue(positions[i].getColumnSpace(parallel.getBestMove(players[i], Duration.ofMillis(20))) > 0);
+			parallel.close();
+		}
+	}
+
+	@Test
+	public void testSearchAfterClose() {
+		//closing lets go of the threads, the next search starts them again
+		ConnectFourAI parallel = new ConnectFourAI(positions[0].copy(), 4);
+		parallel.setThreadCount(4);
+		int move = parallel.getBestMove(players[0], 6);
+		parallel.close();
+		assertEquals(move, parallel.getBestMove(players[0], 6));
+		parallel.close();
+	}
+
+	@Test
+	public void testGetBestMoveBlocksWin() {
+		BoardModel board = new BoardModel();
+		board.doMove(3, PlayerColor.RED);
+		board.doMove(0, PlayerColor.BLUE);
+		board.doMove(3, PlayerColor.RED);
+		board.doMove(6, PlayerColor.BLUE);
+		board.doMove(3, PlayerColor.RED);
+		//blue has to block the top of red's column or lose
+		assertEquals(3, new ConnectFourAI(board).getBestMove(PlayerColor.BLUE));
+	}
+
+	@Test
+	public void testGetBestMoveWithTimeBudget() {
+		ConnectFourAI ai = new ConnectFourAI(new BoardModel());
+		long start = System.nanoTime();
+		int move = ai.getBestMove(PlayerColor.RED, Duration.ofMillis(200));
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 1000);
+		assertTrue(move >= 0 && move < 7);
+	}
+
+	@Test
+	public void testGetBestMoveWithTimeBudgetBlocksWin() {
+		BoardModel board = new BoardModel();
+		board.doMove(3, PlayerColor.RED);
+		board.doMove(0, PlayerColor.BLUE);
+		board.doMove(3, PlayerColor.RED);
+		board.doMove(6, PlayerColor.BLUE);
+		board.doMove(3, PlayerColor.RED);
+		assertEquals(3, new ConnectFourAI(board).getBestMove(PlayerColor.BLUE, Duration.ofMillis(100)));
+	}
+
+	@Test
+	public void testSolveWin() {
+		BoardModel board = new BoardModel();
+		board.doMove(3, PlayerColor.RED);
+		board.doMove(0, PlayerColor.BLUE);
+		board.doMove(3, PlayerColor.RED);
+		board.doMove(6, PlayerColor.BLUE);
+		board.doMove(3, PlayerColor.RED);
+		board.doMove(0, PlayerColor.BLUE);
+		SolverResult result = new ConnectFourAI(board).solve(PlayerColor.RED);
+		assertEquals(PlayerColor.RED, result.getWinner());
+		assertEquals(1, result.getMovesToEnd());
+		assertEquals(3, result.getBestMove());
+	}
+
+	@Test
+	public void testSolveLoss() {
+		BoardModel board = new BoardModel();
+		board.doMove(1, PlayerColor.RED);
+		board.doMove(1, PlayerColor.BLUE);
+		board.doMove(2, PlayerColor.RED);
+		board.doMove(2, PlayerColor.BLUE);
+		board.doMove(3, PlayerColor.RED);
+		//red can win on either side and blue can only block one
+		SolverResult result = new ConnectFourAI(board).solve(PlayerColor.BLUE);
+		assertEquals(PlayerColor.RED, result.getWinner());
+		assertEquals(2, result.getMovesToEnd());
+		assertTrue(result.getScore() < 0);
+	}
+
+	/**
+	 * The plain negamax search the AI used before it had any pruning.
+	 * The best move is the last column with the highest value.
+	 */
+	static int referenceBestMove(BoardModel board, int depth, PlayerColor player) {
+		int bestValue = REFERENCE_MIN_SCORE;
+		int bestColumn = 0;
+		for (int column = 0; column < board.getGridWidth(); column++) {
+			if (board.doTemporaryMove(column, player)) {
+				int val = -referenceNegamax(board, depth - 1, player.opponent());
+				if (val >= bestValue) {
+					bestValue = val;
+					bestColumn = column;
+				}
+				board.undoTemporaryMove(column);
+			}
+		}
+		return bestColumn;
+	}
+
+	static int referenceNegamax(BoardModel board, int depth, PlayerColor player) {
+		PlayerColor winner = board.getWinner();
+		if (winner == player)
+			return REFERENCE_MAX_SCORE;
+		else if (winner == player.opponent())
+			return REFERENCE_MIN_SCORE;
+		if (board.getPieceCount(PlayerColor.NONE) == 0)
+			return 0;
+		if (depth == 0)
+			return referenceEvaluate(board, player);
+
+		int bestValue = REFERENCE_MIN_SCORE;
+		for (int column = 0; column < board.getGridWidth(); column++) {
+			if (board.doTemporaryMove(column, player)) {
+				bestValue = Math.max(bestValue, -referenceNegamax(board, depth - 1, player.opponent()));
+				board.undoTemporaryMove(column);
+			}
+		}
+		return bestValue;
+	}
+
+	static int referenceEvaluate(BoardModel board, PlayerColor player) {
+		int[][] directions = {{1, 0}, {0, 1}, {1, 1}, {-1, 1}};
+		int totalValue = 0;
+		for (int[] direction : directions) {
+			for (int x = 0; x < board.getGridWidth(); x++) {
+				for (int y = 0; y < board.getGridHeight(); y++) {
+					int endX = x + (board.getConnectLength() - 1) * direction[0];
+					int endY = y + (board.getConnectLength() - 1) * direction[1];
+					if (endX < 0 || endX >= board.getGridWidth() || endY >= board.getGridHeight())
+						continue;
+					//count the pieces in this line if they are all one color
+					PlayerColor owner = PlayerColor.NONE;
+					int count = 0;
+					boolean valid = true;
+					for (int i = 0; i < board.getConnectLength(); i++) {
+						PlayerColor piece = board.getGridPiece(new Position(x + i * direction[0], y + i * direction[1]));
+						if (piece == PlayerColor.NONE)
+							continue;
+						if (owner == PlayerColor.NONE)
+							owner = piece;
+						if (piece == owner)
+							count++;
+						else
+							valid = false;
+					}
+					if (valid)
+						totalValue += (owner == player) ? count * count : -count * count;
+				}
+			}
+		}
+		return totalValue;
+	}
+}
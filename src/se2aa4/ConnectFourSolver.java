@@ -0,0 +1,350 @@
+package se2aa4;
+/**
+ * This class finds the exact result of a position when both players
+ * play perfectly, unlike {@link ConnectFourAI} which only guesses how
+ * good a position is once it can't look any further ahead.
+ * It works straight on the bitboards of a {@link BoardModel} and
+ * passes positions around as primitives so the search never creates
+ * any objects. The solver was based on the one described here
+ * http://blog.gamesolver.org/
+ * <p>
+ * Positions are stored as two masks, the pieces of the player whose
+ * turn it is and every occupied spot. Scores are from the point of
+ * view of the player whose turn it is: the amount of pieces the winner
+ * still has left when they win, negative if the opponent wins, or 0
+ * for a draw.
+ */
+public class ConnectFourSolver {
+	private static final int DEFAULT_TABLE_MEGABYTES = 64;
+
+	private final int GRID_WIDTH;
+	private final int GRID_HEIGHT;
+	private final int COLUMN_BITS;
+	private final int CELL_COUNT;
+	private final long BOTTOM_MASK;
+	private final long BOARD_MASK;
+	// An empty board of the same size, only used to find lines of pieces
+	private final BoardModel lines;
+
+	private final int[] columnOrder;
+	// The moves of each node being searched sorted by how good they look,
+	// indexed by how many pieces are on the board
+	private final long[][] sortedMoves;
+	private final int[][] sortedScores;
+	private final TranspositionTable table;
+	private long nodeCount;
+
+	/**
+	 * Create a solver for boards the size of the given board.
+	 * @param board a board of the size to solve
+	 */
+	public ConnectFourSolver(BoardModel board) {
+		this(board, DEFAULT_TABLE_MEGABYTES);
+	}
+
+	/**
+	 * Create a solver for boards the size of the given board with a
+	 * certain amount of memory for remembering positions.
+	 * @param board a board of the size to solve
+	 * @param tableMegabytes the size of the transposition table in megabytes
+	 */
+	public ConnectFourSolver(BoardModel board, int tableMegabytes) {
+		GRID_WIDTH = board.getGridWidth();
+		GRID_HEIGHT = board.getGridHeight();
+		COLUMN_BITS = GRID_HEIGHT + 1;
+		CELL_COUNT = GRID_WIDTH * GRID_HEIGHT;
+
+		long bottom = 0;
+		for (int x = 0; x < GRID_WIDTH; x++) {
+			bottom |= 1L << (x * COLUMN_BITS);
+		}
+		BOTTOM_MASK = bottom;
+		BOARD_MASK = bottom * ((1L << GRID_HEIGHT) - 1);
+		lines = new BoardModel(GRID_WIDTH, GRID_HEIGHT, board.getConnectLength());
+
+		sortedMoves = new long[CELL_COUNT + 1][GRID_WIDTH];
+		sortedScores = new int[CELL_COUNT + 1][GRID_WIDTH];
+
+		columnOrder = MoveOrdering.CENTER_FIRST.getColumnOrder(GRID_WIDTH);
+		table = new TranspositionTable(tableMegabytes);
+	}
+
+	/**
+	 * Find the exact result of the position on a board.
+	 * @param board the board, which must not already have a winner
+	 * @param player the player whose turn it is
+	 * @return the result, including a move that gets it
+	 */
+	public SolverResult solve(BoardModel board, PlayerColor player) {
+		long current = board.getPlayerMask(player);
+		long mask = board.getOccupiedMask();
+		int moves = Long.bitCount(mask);
+
+		// Find the best move by solving the position after every move
+		int bestScore = Integer.MIN_VALUE;
+		int bestMove = -1;
+		for (int column : columnOrder) {
+			if (!canPlay(mask, column)) {
+				continue;
+			}
+
+			int score;
+			if (isWinningMove(current, mask, column)) {
+				score = (CELL_COUNT + 1 - moves) / 2;
+			} else {
+				long move = (mask + bottomMaskOf(column)) & columnMaskOf(column);
+				score = -solve(current ^ mask, mask | move, moves + 1);
+			}
+			if (score > bestScore) {
+				bestScore = score;
+				bestMove = column;
+			}
+		}
+
+		if (bestMove == -1) {
+			// The board is full
+			return new SolverResult(PlayerColor.NONE, 0, 0, -1);
+		}
+		return createResult(bestScore, moves, player, bestMove);
+	}
+
+	/**
+	 * Turn a score into a result.
+	 * @param score the score of the position
+	 * @param moves how many pieces are on the board
+	 * @param player the player whose turn it is
+	 * @param bestMove the move that gets the score
+	 * @return the result
+	 */
+	private SolverResult createResult(int score, int moves, PlayerColor player, int bestMove) {
+		if (score == 0) {
+			return new SolverResult(PlayerColor.NONE, 0, CELL_COUNT - moves, bestMove);
+		}
+
+		// A score means the winning piece is dropped when the board has
+		// CELL_COUNT - 2 * score pieces, or one more if it isn't the winner's turn then
+		int winnerScore = Math.abs(score);
+		int winnerMoves = (score > 0) ? moves : moves + 1;
+		int winningMove = CELL_COUNT - 2 * winnerScore;
+		if ((winningMove - winnerMoves) % 2 != 0) {
+			winningMove++;
+		}
+		PlayerColor winner = (score > 0) ? player : player.opponent();
+		return new SolverResult(winner, score, winningMove - moves + 1, bestMove);
+	}
+
+	/**
+	 * Find the exact score of a position by narrowing down the possible scores
+	 * with searches that only check if the score is above a certain value.
+	 * @param current the pieces of the player whose turn it is
+	 * @param mask every occupied spot
+	 * @param moves how many pieces are on the board
+	 * @return the score of the position
+	 */
+	private int solve(long current, long mask, int moves) {
+		if (canWinNext(current, mask)) {
+			return (CELL_COUNT + 1 - moves) / 2;
+		}
+
+		int min = -(CELL_COUNT - moves) / 2;
+		int max = (CELL_COUNT + 1 - moves) / 2;
+		while (min < max) {
+			// Check the middle of the range, but towards 0 first since
+			// checking if the score is close to 0 is a lot faster
+			int med = min + (max - min) / 2;
+			if (med <= 0 && min / 2 < med) {
+				med = min / 2;
+			} else if (med >= 0 && max / 2 > med) {
+				med = max / 2;
+			}
+
+			int result = negamax(current, mask, moves, med, med + 1);
+			if (result <= med) {
+				max = result;
+			} else {
+				min = result;
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Figure out the score of a position using the negamax algorithm with
+	 * alpha-beta pruning. The player whose turn it is must not be able to
+	 * win with their next move.
+	 * @param current the pieces of the player whose turn it is
+	 * @param mask every occupied spot
+	 * @param moves how many pieces are on the board
+	 * @param alpha the score the current player is already guaranteed elsewhere
+	 * @param beta the score the opponent is already guaranteed elsewhere
+	 * @return the exact score if it is between alpha and beta, otherwise a bound
+	 */
+	private int negamax(long current, long mask, int moves, int alpha, int beta) {
+		nodeCount++;
+
+		// Any move that lets the opponent win right away isn't worth looking at
+		long next = possibleNonLosingMoves(current, mask);
+		if (next == 0) {
+			return -(CELL_COUNT - moves) / 2;
+		}
+
+		// If the opponent can't win with their next move it is at least a draw
+		if (moves >= CELL_COUNT - 2) {
+			return 0;
+		}
+
+		// The opponent can't win with their next move so the score has a lower bound
+		int min = -(CELL_COUNT - 2 - moves) / 2;
+		if (alpha < min) {
+			alpha = min;
+			if (alpha >= beta) {
+				return alpha;
+			}
+		}
+
+		// The current player can't win with this move so the score has an upper bound
+		int max = (CELL_COUNT - 1 - moves) / 2;
+		long key = current + mask + BOTTOM_MASK;
+		int entry = table.probe(key);
+		if (entry != 0) {
+			int score = TranspositionTable.getScore(entry);
+			if (TranspositionTable.getBound(entry) == TranspositionTable.LOWER_BOUND) {
+				if (score > min) {
+					min = score;
+				}
+			} else if (score < max) {
+				max = score;
+			}
+		}
+		if (alpha < min) {
+			alpha = min;
+			if (alpha >= beta) {
+				return alpha;
+			}
+		}
+		if (beta > max) {
+			beta = max;
+			if (alpha >= beta) {
+				return beta;
+			}
+		}
+
+		// Sort the moves so the ones that make the most new threats are tried first,
+		// using insertion sort since there are only a few of them
+		long[] sortedMoves = this.sortedMoves[moves];
+		int[] sortedScores = this.sortedScores[moves];
+		int moveCount = 0;
+		for (int i = GRID_WIDTH - 1; i >= 0; i--) {
+			long move = next & columnMaskOf(columnOrder[i]);
+			if (move != 0) {
+				int score = Long.bitCount(winningPositions(current | move, mask));
+				int pos = moveCount++;
+				while (pos > 0 && sortedScores[pos - 1] > score) {
+					sortedMoves[pos] = sortedMoves[pos - 1];
+					sortedScores[pos] = sortedScores[pos - 1];
+					pos--;
+				}
+				sortedMoves[pos] = move;
+				sortedScores[pos] = score;
+			}
+		}
+
+		for (int i = moveCount - 1; i >= 0; i--) {
+			long move = sortedMoves[i];
+			// After the move the pieces of the opponent are the ones whose turn it is
+			int score = -negamax(current ^ mask, mask | move, moves + 1, -beta, -alpha);
+			if (score >= beta) {
+				table.store(key, score, 0, TranspositionTable.LOWER_BOUND, 0);
+				return score;
+			}
+			if (score > alpha) {
+				alpha = score;
+			}
+		}
+
+		table.store(key, alpha, 0, TranspositionTable.UPPER_BOUND, 0);
+		return alpha;
+	}
+
+	/**
+	 * Find every empty spot that would complete a line long enough to win.
+	 * @param position the pieces of one player
+	 * @param mask every occupied spot
+	 * @return a mask of the spots, including ones that can't be played yet
+	 */
+	private long winningPositions(long position, long mask) {
+		return lines.getThreatMask(position, mask);
+	}
+
+	/**
+	 * Find every move that doesn't let the opponent win with their next move.
+	 * @param current the pieces of the player whose turn it is
+	 * @param mask every occupied spot
+	 * @return a mask of the spots the moves land on
+	 */
+	private long possibleNonLosingMoves(long current, long mask) {
+		long possible = (mask + BOTTOM_MASK) & BOARD_MASK;
+		long opponentWins = winningPositions(current ^ mask, mask);
+		long forcedMoves = possible & opponentWins;
+		if (forcedMoves != 0) {
+			if ((forcedMoves & (forcedMoves - 1)) != 0) {
+				// The opponent has two ways to win and only one can be blocked
+				return 0;
+			}
+			possible = forcedMoves;
+		}
+		// Don't play right under a spot the opponent could win on
+		return possible & ~(opponentWins >>> 1);
+	}
+
+	/**
+	 * Check if the player whose turn it is can win with their next move.
+	 * @param current the pieces of the player whose turn it is
+	 * @param mask every occupied spot
+	 * @return true if they can win right away
+	 */
+	private boolean canWinNext(long current, long mask) {
+		return (winningPositions(current, mask) & (mask + BOTTOM_MASK) & BOARD_MASK) != 0;
+	}
+
+	/**
+	 * Check if dropping a piece in a column wins the game.
+	 * @param current the pieces of the player whose turn it is
+	 * @param mask every occupied spot
+	 * @param column the column to drop in
+	 * @return true if it wins
+	 */
+	private boolean isWinningMove(long current, long mask, int column) {
+		return (winningPositions(current, mask) & (mask + BOTTOM_MASK) & columnMaskOf(column)) != 0;
+	}
+
+	/**
+	 * Check if there is room in a column.
+	 * @param mask every occupied spot
+	 * @param column the column to check
+	 * @return true if a piece can be dropped in it
+	 */
+	private boolean canPlay(long mask, int column) {
+		return (mask & topMaskOf(column)) == 0;
+	}
+
+	private long bottomMaskOf(int column) {
+		return 1L << (column * COLUMN_BITS);
+	}
+
+	private long topMaskOf(int column) {
+		return 1L << (column * COLUMN_BITS + GRID_HEIGHT - 1);
+	}
+
+	private long columnMaskOf(int column) {
+		return ((1L << GRID_HEIGHT) - 1) << (column * COLUMN_BITS);
+	}
+
+	/**
+	 * Find how many positions were searched since the solver was created.
+	 * @return the amount of positions
+	 */
+	public long getNodeCount() {
+		return nodeCount;
+	}
+}
@@ -0,0 +1,58 @@
+package se2aa4;
+
+import java.time.Duration;
+
+/**
+ * This interface is what the game needs from an AI player, so
+ * different kinds of AI can be chosen from when a game starts.
+ * An AI is kept for the whole game and told about each position
+ * before it is asked for a move.
+ */
+public interface GameAI {
+	
+	/**
+	 * Move the AI to a different position, keeping what it learned.
+	 * @param board the board to consider, which is copied
+	 */
+	void setPosition(BoardModel board);
+	
+	/**
+	 * Move the AI to the position of a snapshot, keeping what it learned.
+	 * @param position the position to consider
+	 */
+	void setPosition(BoardSnapshot position);
+	
+	/**
+	 * Forget everything the AI learned, for when a new game starts.
+	 */
+	void newGame();
+	
+	/**
+	 * Give the AI a token that stops its searches when it is cancelled.
+	 * @param token the token to check, or null to not use one
+	 */
+	void setCancellationToken(CancellationToken token);
+	
+	/**
+	 * Get the best move that can be found in a certain amount of time.
+	 * @param player which player's move
+	 * @param budget how long to search for
+	 * @return the column a piece should be dropped into
+	 */
+	int getBestMove(PlayerColor player, Duration budget);
+	
+	/**
+	 * Get the best move that can be found in a certain amount of time,
+	 * along with how much work it took to find it.
+	 * @param player which player's move
+	 * @param budget how long to search for
+	 * @return the column a piece should be dropped into and the statistics of the search
+	 */
+	SearchResult getSearchResult(PlayerColor player, Duration budget);
+	
+	/**
+	 * Stop the threads the AI searches with, if it has any. The AI can
+	 * still be used after, it just starts them again when it needs them.
+	 */
+	void close();
+}
@@ -0,0 +1,549 @@
+package se2aa4;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Observable;
+import java.util.concurrent.Executor;
+
+/**
+ * This class runs a game without any user interface. It owns the
+ * {@link BoardModel} and {@link GameStateModel} and follows the rules of
+ * the game: playing and editing, checking an edited board is valid,
+ * noticing wins and draws, and letting the AI take its turns. A user
+ * interface only has to call its methods and observe the models, and it
+ * doesn't load any Swing classes so it can also be used on a server or
+ * to play games in a batch.
+ * <p>
+ * The engine isn't thread safe, every method should be called from the
+ * same thread. The AI can take its turns in two ways. If the engine is
+ * given an executor it searches on a background thread as soon as it is
+ * the AI's turn, and the executor is used to play the move, so it should
+ * run it on the thread that uses the engine. Otherwise nothing happens on
+ * its own and {@link #playAITurn()} has to be called on the AI's turn.
+ * <p>
+ * Observers of the engine are told after the AI moves, with the
+ * {@link SearchStatistics} of its search.
+ */
+public class GameEngine extends Observable {
+	// How long the AI gets to think about each move
+	private static final Duration DEFAULT_TURN_TIME = Duration.ofSeconds(1);
+	
+	private final BoardModel boardModel;
+	private final GameStateModel stateModel;
+	// Plays the AI's moves found on the background thread, or null if the AI only moves when asked
+	private final Executor moveExecutor;
+	private OpeningBook openingBook;
+	private Duration turnTime;
+	private boolean pondering;
+	// The same AI is used for every move of a game so it doesn't forget what it learned.
+	// They take a while to create so they are only created once they are needed
+	private ConnectFourAI searchEngine;
+	private MonteCarloAI monteCarloEngine;
+	private AIType aiType;
+	// Thinks about the human's moves while they decide, null when not thinking
+	private Ponderer ponderer;
+	// Cancels the AI's search of its move, null when it isn't searching
+	private CancellationToken searchToken;
+	// How much work the AI did this game and since the engine was created
+	private SearchStatistics gameStatistics;
+	private SearchStatistics totalStatistics;
+	
+	/**
+	 * Create an engine for a normal connect four board where the AI only moves when asked.
+	 */
+	public GameEngine() {
+		this(BoardModel.DEFAULT_WIDTH, BoardModel.DEFAULT_HEIGHT, BoardModel.DEFAULT_CONNECT_LENGTH, null);
+	}
+	
+	/**
+	 * Create an engine for a board of any size.
+	 * @param width the amount of columns
+	 * @param height the amount of rows
+	 * @param connectLength how many pieces in a row it takes to win
+	 * @param moveExecutor runs the AI's moves once they are found, or null to only move when asked
+	 */
+	public GameEngine(int width, int height, int connectLength, Executor moveExecutor) {
+		boardModel = new BoardModel(width, height, connectLength);
+		stateModel = new GameStateModel();
+		this.moveExecutor = moveExecutor;
+		turnTime = DEFAULT_TURN_TIME;
+		pondering = true;
+		aiType = AIType.SEARCH;
+	}
+	
+	/**
+	 * Get the board, which can be observed to know when the pieces change.
+	 * It should only be changed through the engine.
+	 * @return the board
+	 */
+	public BoardModel getBoardModel() {
+		return boardModel;
+	}
+	
+	/**
+	 * Get the state of the game, which can be observed to know when it changes.
+	 * It should only be changed through the engine.
+	 * @return the state model
+	 */
+	public GameStateModel getStateModel() {
+		return stateModel;
+	}
+	
+	/**
+	 * Give the AI an opening book to use.
+	 * @param book the opening book, or null to not use one
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		openingBook = book;
+		if (searchEngine != null) {
+			synchronized (searchEngine) {
+				searchEngine.setOpeningBook(book);
+			}
+		}
+	}
+	
+	/**
+	 * Set how long the AI gets to think about each move.
+	 * @param turnTime the time per move
+	 */
+	public void setTurnTime(Duration turnTime) {
+		this.turnTime = turnTime;
+	}
+	
+	/**
+	 * Set whether the search AI thinks about the human's moves while they decide.
+	 * It is on by default, but a program that plays the AI against itself or
+	 * answers right away has no use for it.
+	 * @param pondering true to think during the human's turn
+	 */
+	public void setPondering(boolean pondering) {
+		this.pondering = pondering;
+		if (!pondering) {
+			stopPondering();
+		}
+	}
+	
+	/**
+	 * Get the state the game is in.
+	 * @return the state
+	 */
+	public GameState getState() {
+		return stateModel.getState();
+	}
+	
+	/**
+	 * Get the player whose turn it is.
+	 * @return the current player
+	 */
+	public PlayerColor getCurrentPlayer() {
+		return stateModel.getCurrentPlayer();
+	}
+	
+	/**
+	 * Get the player the AI plays as.
+	 * @return the color of the AI, or NONE if two humans are playing
+	 */
+	public PlayerColor getAIPlayer() {
+		return stateModel.getAIPlayer();
+	}
+	
+	/**
+	 * Check if it is the AI's turn in a game that is being played.
+	 * @return true if the AI should move
+	 */
+	public boolean isAITurn() {
+		return stateModel.getState() == GameState.PLAY_STATE && stateModel.getAIPlayer() != PlayerColor.NONE
+				&& stateModel.getAIPlayer() == stateModel.getCurrentPlayer();
+	}
+	
+	/**
+	 * Get the winner of the game.
+	 * @return the winner, or NONE if nobody has won
+	 */
+	public PlayerColor getWinner() {
+		return boardModel.getWinner();
+	}
+	
+	/**
+	 * Get how much work the AI did this game.
+	 * @return the statistics, or null if the AI hasn't moved this game
+	 */
+	public SearchStatistics getGameStatistics() {
+		return gameStatistics;
+	}
+	
+	/**
+	 * Get how much work the AI did since the engine was created.
+	 * @return the statistics, or null if the AI hasn't moved yet
+	 */
+	public SearchStatistics getTotalStatistics() {
+		return totalStatistics;
+	}
+	
+	/**
+	 * Start a game on the current board. If a game is already being
+	 * played it is started over from the current board.
+	 * @param aiPlayer the color the AI plays as, or NONE for two humans
+	 * @param aiType which AI plays, ignored if there is no AI player
+	 */
+	public void newGame(PlayerColor aiPlayer, AIType aiType) {
+		// Whatever the AI was doing was for the old game
+		cancelSearch();
+		stopPondering();
+		if (aiPlayer != PlayerColor.NONE) {
+			this.aiType = aiType;
+		}
+		stateModel.setAIPlayer(aiPlayer);
+		stateModel.setCurrentPlayer(boardModel.getStartPlayer());
+		if (stateModel.getState() == GameState.PLAY_STATE) {
+			// The state doesn't change so it won't start the game by itself
+			startGame();
+		}
+		setState(GameState.PLAY_STATE);
+		turnChanged();
+	}
+	
+	/**
+	 * Drop a piece for the human whose turn it is.
+	 * @param column the column to drop it in
+	 * @return true if the piece was dropped, false if it isn't a human's
+	 * turn or the column is full
+	 */
+	public boolean play(int column) {
+		if (stateModel.getState() != GameState.PLAY_STATE || isAITurn()) {
+			return false;
+		}
+		if (!boardModel.doMove(column, stateModel.getCurrentPlayer())) {
+			return false;
+		}
+		stateModel.nextTurn();
+		turnChanged();
+		return true;
+	}
+	
+	/**
+	 * Let the AI find and play its move on this thread, for when the engine
+	 * has no executor to play the AI's moves by itself.
+	 * @return the AI's move and the statistics of its search, or null if it isn't the AI's turn
+	 */
+	public SearchResult playAITurn() {
+		if (!isAITurn()) {
+			return null;
+		}
+		cancelSearch();
+		Ponderer finishedPonderer = ponderer;
+		ponderer = null;
+		PlayerColor player = stateModel.getCurrentPlayer();
+		SearchResult result = search(getAI(), finishedPonderer, boardModel.snapshot(), player, null);
+		finishAITurn(result, player);
+		return result;
+	}
+	
+	/**
+	 * Start changing the pieces on the board by hand.
+	 */
+	public void startEditing() {
+		setState(GameState.EDIT_STATE);
+	}
+	
+	/**
+	 * Choose the color {@link #setPiece(Position)} puts down.
+	 * @param color the color, or NONE to clear spots
+	 */
+	public void setEditColor(PlayerColor color) {
+		stateModel.setEditColor(color);
+	}
+	
+	/**
+	 * Set a spot on the board to the edit color, only while editing.
+	 * @param position the spot
+	 * @return true if the spot was set
+	 */
+	public boolean setPiece(Position position) {
+		if (stateModel.getState() != GameState.EDIT_STATE) {
+			return false;
+		}
+		boardModel.setGridPiece(position, stateModel.getEditColor());
+		return true;
+	}
+	
+	/**
+	 * Find what is wrong with the pieces on the board, if anything.
+	 * The floating pieces can be found with {@link BoardModel#getErrorPositions()}.
+	 * @return a message describing the problem, or null if the board can be played on
+	 */
+	public String validate() {
+		String errorMessage = null;
+		
+		// Make sure the amount of pieces is balanced
+		PlayerColor errorPlayer = boardModel.getErrorColor();
+		if (errorPlayer != PlayerColor.NONE) {
+			errorMessage = "Too many " + errorPlayer.toString() + "S";
+		}
+		
+		// Make sure there are no winners
+		errorPlayer = boardModel.getWinner();
+		if (errorPlayer != PlayerColor.NONE) {
+			errorMessage = errorPlayer.toString() + " already won";
+		}
+		
+		// Make sure there are no floating pieces
+		if (boardModel.getErrorPositions() != null) {
+			errorMessage = "There are floating pieces";
+		}
+		return errorMessage;
+	}
+	
+	/**
+	 * Stop editing and play on from the edited board if it is valid, with the
+	 * same players as the last game.
+	 * @return null if the game started, otherwise what is wrong with the board
+	 */
+	public String finishEditing() {
+		if (stateModel.getState() != GameState.EDIT_STATE) {
+			return null;
+		}
+		String errorMessage = validate();
+		if (errorMessage == null) {
+			setState(GameState.PLAY_STATE);
+			stateModel.setCurrentPlayer(boardModel.getStartPlayer());
+			turnChanged();
+		}
+		return errorMessage;
+	}
+	
+	/**
+	 * Leave the game and go back to the start with an empty board.
+	 */
+	public void goToStart() {
+		setState(GameState.START_STATE);
+		boardModel.reset();
+	}
+	
+	/**
+	 * Load a game saved with {@link #save(String, String)}.
+	 * @param stateFileName the file the state of the game is in
+	 * @param boardFileName the file the board is in
+	 * @throws IOException if a file can't be read
+	 */
+	public void load(String stateFileName, String boardFileName) throws IOException {
+		// The loaded game could be in the same state as the current one
+		// so the AI has to be stopped here instead of when the state changes
+		cancelSearch();
+		stopPondering();
+		stateModel.loadFromFile(stateFileName);
+		boardModel.loadFromFile(boardFileName);
+		if (stateModel.getState() == GameState.PLAY_STATE) {
+			startGame();
+			turnChanged();
+		}
+	}
+	
+	/**
+	 * Save the game to files.
+	 * @param stateFileName the file to save the state of the game in
+	 * @param boardFileName the file to save the board in
+	 * @throws IOException if a file can't be written
+	 */
+	public void save(String stateFileName, String boardFileName) throws IOException {
+		stateModel.saveToFile(stateFileName);
+		boardModel.saveToFile(boardFileName);
+	}
+	
+	/**
+	 * Stop everything the AI is doing in the background and the
+	 * threads it searches with.
+	 */
+	public void shutdown() {
+		cancelSearch();
+		stopPondering();
+		for (GameAI ai : new GameAI[] {searchEngine, monteCarloEngine}) {
+			if (ai != null) {
+				// Wait for a search that was just cancelled to stop
+				synchronized (ai) {
+					ai.close();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Change the state of the game, stopping the AI if the game it was thinking about is over.
+	 * @param state the new state
+	 */
+	private void setState(GameState state) {
+		if (state != stateModel.getState()) {
+			// The AI's move is for a game that doesn't exist anymore
+			cancelSearch();
+			if (state == GameState.PLAY_STATE) {
+				startGame();
+			}
+		}
+		if (state != GameState.PLAY_STATE) {
+			// The game is over so there is nothing to think about anymore
+			stopPondering();
+		}
+		stateModel.setState(state);
+	}
+	
+	/**
+	 * Make the AI forget the last game since it won't help with this one.
+	 */
+	private void startGame() {
+		GameAI ai = (aiType == AIType.MONTE_CARLO) ? monteCarloEngine : searchEngine;
+		if (ai != null) {
+			// The AI is locked by a search that was just cancelled until it stops
+			synchronized (ai) {
+				ai.newGame();
+			}
+		}
+		gameStatistics = null;
+	}
+	
+	/**
+	 * Check if the last move ended the game, and if not and the AI
+	 * plays by itself, start its turn if it is the AI's turn.
+	 */
+	private void turnChanged() {
+		if (stateModel.getState() != GameState.PLAY_STATE) {
+			return;
+		}
+		if (boardModel.getWinner() != PlayerColor.NONE) {
+			setState(GameState.WIN_STATE);
+		} else if (boardModel.getPieceCount(PlayerColor.NONE) == 0) {
+			setState(GameState.DRAW_STATE);
+		} else if (moveExecutor != null && isAITurn()) {
+			startAITurn();
+		}
+	}
+	
+	/**
+	 * Search for the AI's move on a background thread and play it with the executor.
+	 */
+	private void startAITurn() {
+		cancelSearch();
+		final Ponderer finishedPonderer = ponderer;
+		ponderer = null;
+		final CancellationToken token = new CancellationToken();
+		searchToken = token;
+		final BoardSnapshot position = boardModel.snapshot();
+		final PlayerColor player = stateModel.getCurrentPlayer();
+		final GameAI ai = getAI();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final SearchResult result = search(ai, finishedPonderer, position, player, token);
+				moveExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						// If the game changed while the AI was thinking the move is thrown away
+						if (token.isCancelled()) {
+							return;
+						}
+						searchToken = null;
+						finishAITurn(result, player);
+					}
+				});
+			}
+		}, "AI turn");
+		// Don't keep the program running if the game is closed
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Find the AI's move. This doesn't touch the engine so it can run on any thread.
+	 * @param ai the AI to search with
+	 * @param finishedPonderer the ponderer that was thinking during the human's turn, or null
+	 * @param position the position to search
+	 * @param player the color of the AI
+	 * @param token the token that stops the search, or null
+	 * @return the move and statistics of the search
+	 */
+	private SearchResult search(GameAI ai, Ponderer finishedPonderer, BoardSnapshot position,
+			PlayerColor player, CancellationToken token) {
+		// The ponderer thought about the human's moves with the same AI, so
+		// it has to let go of it. What it found stays in the AI's table and
+		// lets the search below get deeper if the human made one of them
+		if (finishedPonderer != null) {
+			finishedPonderer.stop();
+		}
+		
+		// Calculate the next move, using all of the AI's turn to search
+		synchronized (ai) {
+			ai.setPosition(position);
+			ai.setCancellationToken(token);
+			return ai.getSearchResult(player, turnTime);
+		}
+	}
+	
+	/**
+	 * Play the move the AI found and pass the turn back to the human.
+	 * @param result the result of the AI's search
+	 * @param player the color of the AI
+	 */
+	private void finishAITurn(SearchResult result, PlayerColor player) {
+		if (!boardModel.doMove(result.getBestMove(), player)) {
+			// The AI should never pick a full column, but if it does the
+			// turn is still played so the game doesn't get stuck
+			int column = 0;
+			while (!boardModel.doMove(column, player)) {
+				column++;
+			}
+		}
+		SearchStatistics statistics = result.getStatistics();
+		gameStatistics = (gameStatistics == null) ? statistics : gameStatistics.add(statistics);
+		totalStatistics = (totalStatistics == null) ? statistics : totalStatistics.add(statistics);
+		
+		// Think about the human's moves while they decide, this
+		// is stopped right away if the move ended the game. The Monte Carlo
+		// AI doesn't need it since it keeps the tree it already played through
+		if (pondering && aiType == AIType.SEARCH) {
+			ponderer = new Ponderer(searchEngine, boardModel.snapshot(), player);
+			ponderer.start();
+		}
+		stateModel.nextTurn();
+		turnChanged();
+		
+		setChanged();
+		notifyObservers(statistics);
+	}
+	
+	/**
+	 * Get the AI that is playing, creating it the first time it is needed.
+	 * @return the AI
+	 */
+	private GameAI getAI() {
+		if (aiType == AIType.MONTE_CARLO) {
+			if (monteCarloEngine == null) {
+				monteCarloEngine = new MonteCarloAI(boardModel);
+			}
+			return monteCarloEngine;
+		}
+		if (searchEngine == null) {
+			searchEngine = new ConnectFourAI(boardModel.snapshot());
+			searchEngine.setOpeningBook(openingBook);
+		}
+		return searchEngine;
+	}
+	
+	/**
+	 * Stop the AI from searching for its move if it was.
+	 * The move it was searching for won't be played.
+	 */
+	private void cancelSearch() {
+		if (searchToken != null) {
+			searchToken.cancel();
+			searchToken = null;
+		}
+	}
+	
+	/**
+	 * Stop thinking about the human's moves if the AI was.
+	 */
+	private void stopPondering() {
+		if (ponderer != null) {
+			ponderer.stop();
+			ponderer = null;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package se2aa4;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GameEngineTest {
+
+	static GameEngine engine; //the engine, where the AI only moves when asked
+
+	@Before
+	public void setUp() throws Exception {
+		engine = new GameEngine();
+		engine.setTurnTime(Duration.ofMillis(50));
+		engine.setPondering(false);
+	}
+
+	@Test
+	public void testTwoPlayerGame() {
+		assertEquals(GameState.START_STATE, engine.getState());
+		engine.newGame(PlayerColor.NONE, null);
+		assertEquals(GameState.PLAY_STATE, engine.getState());
+		PlayerColor first = engine.getCurrentPlayer();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(engine.play(3));
+			assertTrue(engine.play(4));
+		}
+		assertFalse(engine.isAITurn());
+		assertTrue(engine.play(3));
+		//four in a row in the middle column ends the game
+		assertEquals(GameState.WIN_STATE, engine.getState());
+		assertEquals(first, engine.getWinner());
+		assertFalse(engine.play(0));
+	}
+
+	@Test
+	public void testDraw() {
+		//a board with only two spots that nobody can win on
+		GameEngine small = new GameEngine(2, 1, 2, null);
+		small.newGame(PlayerColor.NONE, null);
+		assertTrue(small.play(0));
+		assertFalse(small.play(0)); //the column is full
+		assertTrue(small.play(1));
+		assertEquals(GameState.DRAW_STATE, small.getState());
+	}
+
+	@Test
+	public void testEditing() {
+		//pieces can only be set while editing
+		assertFalse(engine.setPiece(new Position(3, 5)));
+		engine.startEditing();
+		engine.setEditColor(PlayerColor.RED);
+		assertTrue(engine.setPiece(new Position(3, 4)));
+		assertEquals("There are floating pieces", engine.finishEditing());
+		assertEquals(GameState.EDIT_STATE, engine.getState());
+		engine.setEditColor(PlayerColor.BLUE);
+		engine.setPiece(new Position(3, 5));
+		assertNull(engine.validate());
+		assertNull(engine.finishEditing());
+		assertEquals(GameState.PLAY_STATE, engine.getState());
+	}
+
+	@Test
+	public void testEditedWinner() {
+		engine.startEditing();
+		for (int y = 0; y < 4; y++) {
+			engine.setEditColor((y % 2 == 0) ? PlayerColor.RED : PlayerColor.BLUE);
+			engine.setPiece(new Position(0, 5 - y));
+		}
+		engine.setEditColor(PlayerColor.RED);
+		for (int x = 2; x < 6; x++)
+			engine.setPiece(new Position(x, 5));
+		//too many reds, but already having a winner is the bigger problem
+		assertEquals("RED already won", engine.finishEditing());
+	}
+
+	@Test
+	public void testPlayAITurn() {
+		editRedPieces(engine, 3);
+		assertNull(engine.finishEditing());
+		engine.newGame(PlayerColor.BLUE, AIType.SEARCH);
+		assertTrue(engine.isAITurn());
+		assertFalse(engine.play(3)); //it's not the human's turn
+		SearchResult result = engine.playAITurn();
+		assertNotNull(result);
+		assertEquals(PlayerColor.RED, engine.getCurrentPlayer());
+		assertEquals(PlayerColor.BLUE, engine.getBoardModel().getGridPiece(new Position(result.getBestMove(),
+				engine.getBoardModel().getColumnSpace(result.getBestMove()))));
+		assertEquals(1, engine.getGameStatistics().getSearchCount());
+		assertNull(engine.playAITurn()); //now it's the human's turn
+	}
+
+	@Test
+	public void testAIBlocksWin() {
+		//red threatens four in the bottom row
+		editRedPieces(engine, 0, 1, 2);
+		engine.setEditColor(PlayerColor.BLUE);
+		engine.setPiece(new Position(0, 4));
+		engine.setPiece(new Position(1, 4));
+		assertNull(engine.finishEditing());
+		engine.newGame(PlayerColor.BLUE, AIType.MONTE_CARLO);
+		assertEquals(3, engine.playAITurn().getBestMove());
+		assertEquals(GameState.PLAY_STATE, engine.getState());
+	}
+
+	@Test
+	public void testAIGameFinishes() {
+		//the human's moves come from another AI until the game is over
+		engine.newGame(PlayerColor.BLUE, AIType.SEARCH);
+		MonteCarloAI human = new MonteCarloAI(engine.getBoardModel(), 1, 1);
+		while (engine.getState() == GameState.PLAY_STATE) {
+			if (engine.isAITurn()) {
+				assertNotNull(engine.playAITurn());
+			} else {
+				human.setPosition(engine.getBoardModel());
+				assertTrue(engine.play(human.getBestMove(PlayerColor.RED, 2000)));
+			}
+		}
+		if (engine.getState() == GameState.WIN_STATE)
+			assertTrue(engine.getWinner() != PlayerColor.NONE);
+		else
+			assertEquals(GameState.DRAW_STATE, engine.getState());
+	}
+
+	@Test
+	public void testMovesOnExecutor() throws Exception {
+		//the AI's move waits in the queue until it is run
+		final LinkedBlockingQueue<Runnable> moves = new LinkedBlockingQueue<Runnable>();
+		GameEngine background = createBackgroundEngine(moves);
+		background.newGame(PlayerColor.BLUE, AIType.SEARCH);
+		assertTrue(background.isAITurn());
+		Runnable move = moves.poll(5, TimeUnit.SECONDS);
+		assertNotNull(move);
+		assertTrue(background.isAITurn());
+		move.run();
+		assertEquals(PlayerColor.RED, background.getCurrentPlayer());
+		assertEquals(40, background.getBoardModel().getPieceCount(PlayerColor.NONE));
+		assertEquals(1, background.getTotalStatistics().getSearchCount());
+	}
+
+	@Test
+	public void testCancelledMoveIsThrownAway() throws Exception {
+		final LinkedBlockingQueue<Runnable> moves = new LinkedBlockingQueue<Runnable>();
+		GameEngine background = createBackgroundEngine(moves);
+		background.newGame(PlayerColor.BLUE, AIType.SEARCH);
+		//leaving the game before the move is played
+		background.goToStart();
+		Runnable move = moves.poll(5, TimeUnit.SECONDS);
+		assertNotNull(move);
+		move.run();
+		assertEquals(42, background.getBoardModel().getPieceCount(PlayerColor.NONE));
+		assertEquals(GameState.START_STATE, background.getState());
+	}
+
+	@Test
+	public void testNewGameDuringGame() throws Exception {
+		final LinkedBlockingQueue<Runnable> moves = new LinkedBlockingQueue<Runnable>();
+		GameEngine background = createBackgroundEngine(moves);
+		background.newGame(PlayerColor.BLUE, AIType.SEARCH);
+		//starting a two player game before the AI moved throws its move away
+		background.newGame(PlayerColor.NONE, null);
+		Runnable move = moves.poll(5, TimeUnit.SECONDS);
+		assertNotNull(move);
+		move.run();
+		assertEquals(41, background.getBoardModel().getPieceCount(PlayerColor.NONE));
+		assertEquals(PlayerColor.BLUE, background.getCurrentPlayer());
+		assertNull(background.getGameStatistics());
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File stateFile = File.createTempFile("gamestate", ".bin");
+		File boardFile = File.createTempFile("board", ".bin");
+		stateFile.deleteOnExit();
+		boardFile.deleteOnExit();
+		engine.newGame(PlayerColor.NONE, null);
+		PlayerColor first = engine.getCurrentPlayer();
+		engine.play(3);
+		engine.save(stateFile.getPath(), boardFile.getPath());
+		engine.goToStart();
+		assertEquals(42, engine.getBoardModel().getPieceCount(PlayerColor.NONE));
+		engine.load(stateFile.getPath(), boardFile.getPath());
+		assertEquals(GameState.PLAY_STATE, engine.getState());
+		assertEquals(first.opponent(), engine.getCurrentPlayer());
+		assertEquals(first, engine.getBoardModel().getGridPiece(new Position(3, 5)));
+	}
+
+	/**
+	 * Start editing and put red pieces in the bottom row,
+	 * so blue moves first if there is one more red piece.
+	 */
+	static void editRedPieces(GameEngine engine, int... columns) {
+		engine.startEditing();
+		engine.setEditColor(PlayerColor.RED);
+		for (int column : columns)
+			engine.setPiece(new Position(column, 5));
+	}
+
+	/**
+	 * Create an engine that searches for the AI's moves by itself, with one
+	 * red piece on the board so the AI, playing blue, always moves first.
+	 */
+	static GameEngine createBackgroundEngine(final LinkedBlockingQueue<Runnable> moves) {
+		GameEngine background = new GameEngine(7, 6, 4, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				moves.add(command);
+			}
+		});
+		background.setTurnTime(Duration.ofMillis(50));
+		background.setPondering(false);
+		editRedPieces(background, 3);
+		assertNull(background.finishEditing());
+		return background;
+	}
+}
@@ -0,0 +1,512 @@
+package se2aa4;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class decides on a move by playing lots of random games
+ * from the current position instead of looking at every move like
+ * {@link ConnectFourAI} does. The moves that led to the most wins
+ * are tried more often, so the AI spends its time on the moves that
+ * matter. It doesn't need to know how good a position looks, only
+ * who won, so it works the same no matter how big the board is.
+ * The search was based on the one described here
+ * http://en.wikipedia.org/wiki/Monte_Carlo_tree_search
+ * <p>
+ * Positions are stored as bitboards the same way as in
+ * {@link ConnectFourSolver}: the pieces of the player whose turn it
+ * is and every occupied spot. The random games only use those two
+ * numbers so they never create any objects.
+ */
+public class MonteCarloAI implements GameAI {
+	// How much the AI tries moves it doesn't know much about yet
+	private static final double EXPLORATION = 1.4;
+	// How many positions each thread remembers at most, so a long game can't run out of memory
+	private static final int MAX_NODES_PER_THREAD = 1000000;
+	// Roughly how much memory a position takes, not counting its children array
+	private static final int NODE_BYTES = 80;
+	// The trees of all the threads together use at most this part of the memory Java can use
+	private static final int MEMORY_FRACTION = 8;
+	// How many random games to play between checking the time
+	private static final int PLAYOUTS_PER_TIME_CHECK = 64;
+	
+	private final int GRID_WIDTH;
+	private final int GRID_HEIGHT;
+	private final int COLUMN_BITS;
+	private final long BOTTOM_MASK;
+	private final long BOARD_MASK;
+	
+	// Also used to find lines of pieces, which works the same for any size and length of line
+	private final BoardModel board;
+	private CancellationToken cancellationToken;
+	
+	// Each thread has its own tree so they never have to wait for each other
+	private final Tree[] trees;
+	private final int maxNodesPerThread;
+	private ForkJoinPool pool;
+	
+	/**
+	 * A position in the tree of positions that were played through.
+	 */
+	private static class Node {
+		private Node parent;
+		private final long current;
+		private final long mask;
+		// The move that led here, or -1 for the root
+		private final int move;
+		private final Node[] children;
+		// The moves that don't have a child yet, as the spots they land on
+		private long untriedMoves;
+		// The winner is decided, 1 if the player who moved here won and 0 for a draw
+		private final boolean terminal;
+		private final int terminalResult;
+		private int visits;
+		// The sum of the results for the player who moved here, 2 for a win and 1 for a draw
+		private long reward;
+		
+		private Node(Node parent, long current, long mask, int move, int width, boolean terminal, int terminalResult, long untriedMoves) {
+			this.parent = parent;
+			this.current = current;
+			this.mask = mask;
+			this.move = move;
+			this.children = new Node[width];
+			this.terminal = terminal;
+			this.terminalResult = terminalResult;
+			this.untriedMoves = terminal ? 0 : untriedMoves;
+		}
+	}
+	
+	/**
+	 * The tree searched by a single thread.
+	 */
+	private static class Tree {
+		private final Random random;
+		private Node root;
+		private int nodeCount;
+		// How much work the last search did, counting every position
+		// of the tree it went through on the way to each random game
+		private long nodes;
+		private long playouts;
+		private int maxDepth;
+		
+		private Tree(long seed) {
+			random = new Random(seed);
+		}
+	}
+	
+	/**
+	 * Create a new AI that searches on one thread.
+	 * @param board the starting state of the board to consider
+	 */
+	public MonteCarloAI(BoardModel board) {
+		this(board, 1, System.nanoTime());
+	}
+	
+	/**
+	 * Create a new AI that searches on several threads, with random
+	 * games that are always the same for the same seed.
+	 * @param board the starting state of the board to consider
+	 * @param threads the amount of threads to play random games on
+	 * @param seed the seed of the random games
+	 */
+	public MonteCarloAI(BoardModel board, int threads, long seed) {
+		GRID_WIDTH = board.getGridWidth();
+		GRID_HEIGHT = board.getGridHeight();
+		COLUMN_BITS = GRID_HEIGHT + 1;
+		
+		long bottom = 0;
+		for (int x = 0; x < GRID_WIDTH; x++) {
+			bottom |= 1L << (x * COLUMN_BITS);
+		}
+		BOTTOM_MASK = bottom;
+		BOARD_MASK = bottom * ((1L << GRID_HEIGHT) - 1);
+		
+		this.board = board.copy();
+		trees = new Tree[Math.max(1, threads)];
+		for (int i = 0; i < trees.length; i++) {
+			trees[i] = new Tree(seed + i);
+		}
+		// Each thread gets its share of the memory, since each one has its own tree
+		long nodeBytes = NODE_BYTES + 4L * GRID_WIDTH;
+		long memoryNodes = Runtime.getRuntime().maxMemory() / MEMORY_FRACTION / trees.length / nodeBytes;
+		maxNodesPerThread = (int) Math.max(1, Math.min(MAX_NODES_PER_THREAD, memoryNodes));
+	}
+	
+	@Override
+	public void setPosition(BoardModel board) {
+		setPosition(board.snapshot());
+	}
+	
+	@Override
+	public void setPosition(BoardSnapshot position) {
+		board.restore(position);
+	}
+	
+	@Override
+	public void newGame() {
+		board.reset();
+		for (Tree tree : trees) {
+			tree.root = null;
+			tree.nodeCount = 0;
+		}
+	}
+	
+	@Override
+	public void setCancellationToken(CancellationToken token) {
+		cancellationToken = token;
+	}
+	
+	/**
+	 * Stop the threads the random games are played on. They are
+	 * started again by the next search, and the trees are kept.
+	 */
+	@Override
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+	
+	@Override
+	public int getBestMove(PlayerColor player, Duration budget) {
+		return getSearchResult(player, budget).getBestMove();
+	}
+	
+	@Override
+	public SearchResult getSearchResult(PlayerColor player, Duration budget) {
+		return search(player, System.nanoTime() + budget.toNanos(), Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Get the best move after playing a certain amount of random games on
+	 * each thread. With one thread the move is always the same for the same seed.
+	 * @param player which player's move
+	 * @param playouts how many random games to play on each thread
+	 * @return the column a piece should be dropped into
+	 */
+	public int getBestMove(PlayerColor player, int playouts) {
+		return search(player, Long.MAX_VALUE, playouts).getBestMove();
+	}
+	
+	/**
+	 * Find how many random games were played through a move of the current
+	 * position, over every search of the position so far.
+	 * @param player which player's move
+	 * @param column the column of the move
+	 * @return the amount of games, 0 if the move was never searched
+	 */
+	public int getVisits(PlayerColor player, int column) {
+		int visits = 0;
+		long current = board.getPlayerMask(player);
+		long mask = board.getOccupiedMask();
+		for (Tree tree : trees) {
+			if (tree.root != null && tree.root.current == current && tree.root.mask == mask
+					&& tree.root.children[column] != null) {
+				visits += tree.root.children[column].visits;
+			}
+		}
+		return visits;
+	}
+	
+	/**
+	 * Play random games from the current position on every thread until the time
+	 * runs out or enough games were played, and choose the move played the most.
+	 * @param player which player's move
+	 * @param deadline when to stop, compared to System.nanoTime()
+	 * @param playouts how many random games to play on each thread at most
+	 * @return the most played column and the statistics of the search
+	 */
+	private SearchResult search(PlayerColor player, final long deadline, final long playouts) {
+		long startTime = System.nanoTime();
+		final long current = board.getPlayerMask(player);
+		final long mask = board.getOccupiedMask();
+		
+		// If it is a draw there is nothing to look at so just pick the first column
+		if (possibleMoves(mask) == 0) {
+			return new SearchResult(0, new SearchStatistics(0, 0, 0, 0, 0, 0, 0, 0, System.nanoTime() - startTime));
+		}
+		
+		if (trees.length == 1) {
+			searchTree(trees[0], current, mask, deadline, playouts);
+		} else {
+			if (pool == null) {
+				pool = new ForkJoinPool(trees.length);
+			}
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+			for (final Tree tree : trees) {
+				tasks.add(new Callable<Object>() {
+					@Override
+					public Object call() {
+						searchTree(tree, current, mask, deadline, playouts);
+						return null;
+					}
+				});
+			}
+			List<Future<Object>> results = pool.invokeAll(tasks);
+			for (Future<Object> result : results) {
+				try {
+					result.get();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new IllegalStateException("A search thread failed", e);
+				}
+			}
+		}
+		
+		// The move played the most is the one the search trusts the most.
+		// A move that wins right away is always chosen
+		int bestColumn = -1;
+		long bestVisits = -1;
+		long totalNodes = 0;
+		long totalPlayouts = 0;
+		int maxDepth = 0;
+		for (int column = 0; column < GRID_WIDTH; column++) {
+			long visits = 0;
+			for (Tree tree : trees) {
+				Node child = tree.root.children[column];
+				if (child != null) {
+					visits += child.visits;
+					if (child.terminal && child.terminalResult == 1) {
+						visits = Long.MAX_VALUE / 2;
+					}
+				}
+			}
+			if (visits > bestVisits && (mask & topMaskOf(column)) == 0) {
+				bestVisits = visits;
+				bestColumn = column;
+			}
+		}
+		for (Tree tree : trees) {
+			totalNodes += tree.nodes;
+			totalPlayouts += tree.playouts;
+			maxDepth = Math.max(maxDepth, tree.maxDepth);
+		}
+		
+		// Every random game ends in a position that is scored without searching further
+		SearchStatistics statistics = new SearchStatistics(totalNodes, totalPlayouts, maxDepth,
+				0, 0, 0, 0, 0, System.nanoTime() - startTime);
+		return new SearchResult(Math.max(0, bestColumn), statistics);
+	}
+	
+	/**
+	 * Play random games on one tree, starting from the part of the tree
+	 * that was already searched if the position was reached from it.
+	 * @param tree the tree to search
+	 * @param current the pieces of the player whose turn it is
+	 * @param mask every occupied spot
+	 * @param deadline when to stop, compared to System.nanoTime()
+	 * @param playouts how many random games to play at most
+	 */
+	private void searchTree(Tree tree, long current, long mask, long deadline, long playouts) {
+		tree.root = findRoot(tree, current, mask);
+		tree.nodes = 0;
+		tree.playouts = 0;
+		tree.maxDepth = 0;
+		
+		Random random = tree.random;
+		while (tree.playouts < playouts) {
+			if (tree.playouts % PLAYOUTS_PER_TIME_CHECK == 0 && tree.playouts > 0) {
+				if (System.nanoTime() - deadline > 0
+						|| (cancellationToken != null && cancellationToken.isCancelled())) {
+					break;
+				}
+			}
+			
+			// Go down the tree through the most promising moves until
+			// a position that still has moves that weren't tried
+			Node node = tree.root;
+			int depth = 0;
+			while (node.untriedMoves == 0 && !node.terminal) {
+				node = selectChild(node);
+				depth++;
+			}
+			
+			// Add one of the moves that weren't tried to the tree
+			if (node.untriedMoves != 0 && tree.nodeCount < maxNodesPerThread) {
+				long move = randomBit(node.untriedMoves, random);
+				node.untriedMoves &= ~move;
+				node = addChild(node, move);
+				tree.nodeCount++;
+				depth++;
+			}
+			tree.maxDepth = Math.max(tree.maxDepth, depth);
+			tree.nodes += depth + 1;
+			
+			// Play the rest of the game randomly, then let every position
+			// on the way know who won from the point of view of the player who
+			// moved there
+			int result;
+			if (node.terminal) {
+				result = node.terminalResult;
+			} else {
+				result = -playout(node.current, node.mask, random);
+			}
+			while (node != null) {
+				node.visits++;
+				node.reward += result + 1;
+				result = -result;
+				node = node.parent;
+			}
+			tree.playouts++;
+		}
+	}
+	
+	/**
+	 * Find the position in the tree that was already searched, which is
+	 * usually a few moves below the root after the players made their moves.
+	 * @param tree the tree to look in
+	 * @param current the pieces of the player whose turn it is
+	 * @param mask every occupied spot
+	 * @return the position, or a new one if it wasn't in the tree
+	 */
+	private Node findRoot(Tree tree, long current, long mask) {
+		Node root = tree.root;
+		if (root != null) {
+			Node found = findNode(root, current, mask, 2);
+			if (found != null) {
+				// Let the rest of the tree be garbage collected
+				found.parent = null;
+				if (found != root) {
+					tree.nodeCount = countNodes(found);
+				}
+				return found;
+			}
+		}
+		tree.nodeCount = 1;
+		return new Node(null, current, mask, -1, GRID_WIDTH, false, 0, possibleMoves(mask));
+	}
+	
+	private Node findNode(Node node, long current, long mask, int maxMoves) {
+		if (node.current == current && node.mask == mask) {
+			return node;
+		}
+		if (maxMoves == 0 || (node.mask & ~mask) != 0) {
+			return null;
+		}
+		for (Node child : node.children) {
+			if (child != null) {
+				Node found = findNode(child, current, mask, maxMoves - 1);
+				if (found != null) {
+					return found;
+				}
+			}
+		}
+		return null;
+	}
+	
+	private int countNodes(Node node) {
+		int count = 1;
+		for (Node child : node.children) {
+			if (child != null) {
+				count += countNodes(child);
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Choose which move to go through using UCT, which balances trying
+	 * the moves that won the most with trying the ones that weren't tried much.
+	 * @param node a position where every move was tried
+	 * @return the chosen child
+	 */
+	private Node selectChild(Node node) {
+		double logVisits = Math.log(node.visits);
+		Node best = null;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (Node child : node.children) {
+			if (child != null) {
+				double value = child.reward / (2.0 * child.visits)
+						+ EXPLORATION * Math.sqrt(logVisits / child.visits);
+				if (value > bestValue) {
+					bestValue = value;
+					best = child;
+				}
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Add the position after a move to the tree.
+	 * @param node the position before the move
+	 * @param move the spot the piece lands on
+	 * @return the new position
+	 */
+	private Node addChild(Node node, long move) {
+		int column = Long.numberOfTrailingZeros(move) / COLUMN_BITS;
+		long newMask = node.mask | move;
+		boolean won = board.hasConnection(node.current | move);
+		boolean full = newMask == BOARD_MASK;
+		Node child = new Node(node, node.current ^ node.mask, newMask, column, GRID_WIDTH,
+				won || full, won ? 1 : 0, possibleMoves(newMask));
+		node.children[column] = child;
+		return child;
+	}
+	
+	/**
+	 * Play random moves until the game is over. A player always wins
+	 * right away if they can and blocks the opponent if they can't, since
+	 * the games are a lot closer to real ones that way.
+	 * @param current the pieces of the player whose turn it is
+	 * @param mask every occupied spot
+	 * @param random the random numbers to use
+	 * @return 1 if the player whose turn it is wins, -1 if they lose and 0 for a draw
+	 */
+	private int playout(long current, long mask, Random random) {
+		int result = 1;
+		while (true) {
+			long possible = possibleMoves(mask);
+			if (possible == 0) {
+				return 0;
+			}
+			if ((board.getThreatMask(current, mask) & possible) != 0) {
+				return result;
+			}
+			
+			long move;
+			long forced = board.getThreatMask(current ^ mask, mask) & possible;
+			if (forced != 0) {
+				move = Long.lowestOneBit(forced);
+			} else {
+				move = randomBit(possible, random);
+			}
+			current ^= mask;
+			mask |= move;
+			result = -result;
+		}
+	}
+	
+	/**
+	 * Choose one of the set bits of a number at random.
+	 * @param bits the number
+	 * @param random the random numbers to use
+	 * @return a number with just the chosen bit set
+	 */
+	private static long randomBit(long bits, Random random) {
+		int index = random.nextInt(Long.bitCount(bits));
+		for (int i = 0; i < index; i++) {
+			bits &= bits - 1;
+		}
+		return Long.lowestOneBit(bits);
+	}
+	
+	/**
+	 * Find the spots a piece can be dropped into.
+	 * @param mask every occupied spot
+	 * @return a mask of the spots
+	 */
+	private long possibleMoves(long mask) {
+		return (mask + BOTTOM_MASK) & BOARD_MASK;
+	}
+	
+	private long topMaskOf(int column) {
+		return 1L << (column * COLUMN_BITS + GRID_HEIGHT - 1);
+	}
+}
@@ -0,0 +1,82 @@
+package se2aa4;
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MonteCarloAITest {
+
+	static BoardModel theBoard; //red can win in column 4 and blue can win in column 0
+
+	@Before
+	public void setUp() throws Exception {
+		theBoard = new BoardModel();
+		for (int x = 0; x < 3; x++) {
+			theBoard.doTemporaryMove(x + 1, PlayerColor.RED);
+			theBoard.doTemporaryMove(0, PlayerColor.BLUE);
+		}
+	}
+
+	@Test
+	public void testTakesWin() {
+		MonteCarloAI ai = new MonteCarloAI(theBoard, 1, 1);
+		assertEquals(4, ai.getBestMove(PlayerColor.RED, 2000));
+	}
+
+	@Test
+	public void testBlocksWin() {
+		//red is about to win in column 4 but blue can win first
+		MonteCarloAI ai = new MonteCarloAI(theBoard, 1, 1);
+		assertEquals(0, ai.getBestMove(PlayerColor.BLUE, 2000));
+		//without the blue win red's win has to be blocked
+		theBoard.undoTemporaryMove(0);
+		theBoard.doTemporaryMove(6, PlayerColor.BLUE);
+		ai.setPosition(theBoard);
+		assertEquals(4, ai.getBestMove(PlayerColor.BLUE, 2000));
+	}
+
+	@Test
+	public void testSameSeedSameMove() {
+		BoardModel board = new BoardModel();
+		board.doTemporaryMove(3, PlayerColor.RED);
+		int move = new MonteCarloAI(board, 1, 7).getBestMove(PlayerColor.BLUE, 5000);
+		assertEquals(move, new MonteCarloAI(board, 1, 7).getBestMove(PlayerColor.BLUE, 5000));
+	}
+
+	@Test
+	public void testTreeReuse() {
+		//after both players move the games already played through the position are kept
+		BoardModel board = new BoardModel();
+		MonteCarloAI ai = new MonteCarloAI(board, 1, 3);
+		int move = ai.getBestMove(PlayerColor.RED, 20000);
+		board.doTemporaryMove(move, PlayerColor.RED);
+		board.doTemporaryMove(3, PlayerColor.BLUE);
+		ai.setPosition(board);
+		int visits = 0;
+		for (int column = 0; column < board.getGridWidth(); column++) {
+			visits += ai.getVisits(PlayerColor.RED, column);
+		}
+		assertEquals(0, visits);
+		ai.getBestMove(PlayerColor.RED, 1);
+		visits = 0;
+		for (int column = 0; column < board.getGridWidth(); column++) {
+			visits += ai.getVisits(PlayerColor.RED, column);
+		}
+		assertTrue(visits > 1);
+	}
+
+	@Test
+	public void testParallelTimedSearch() {
+		MonteCarloAI ai = new MonteCarloAI(theBoard, 2, 1);
+		SearchResult result = ai.getSearchResult(PlayerColor.RED, Duration.ofMillis(100));
+		assertEquals(4, result.getBestMove());
+		//every random game goes through at least the root and the position it starts from
+		SearchStatistics statistics = result.getStatistics();
+		assertTrue(statistics.getLeaves() > 0);
+		assertTrue(statistics.getNodes() >= 2 * statistics.getLeaves());
+		ai.close();
+	}
+}
@@ -0,0 +1,51 @@
+package se2aa4;
+/**
+ * This class is a simple record class that holds how good
+ * a single move is, as found by {@link ConnectFourAI#analyze(PlayerColor)}.
+ */
+public class MoveAnalysis {
+	private final int column;
+	private final int score;
+	private final int[] principalVariation;
+	
+	/**
+	 * Create a new analysis of a move.
+	 * @param column the column of the move
+	 * @param score the value of the move for the player making it
+	 * @param principalVariation the moves both players are expected to make,
+	 * starting with this move
+	 */
+	public MoveAnalysis(int column, int score, int[] principalVariation) {
+		this.column = column;
+		this.score = score;
+		this.principalVariation = principalVariation;
+	}
+	
+	/**
+	 * Get the column of the move.
+	 * @return the column
+	 */
+	public int getColumn() {
+		return column;
+	}
+	
+	/**
+	 * Get the value of the move for the player making it, with
+	 * higher values more favorable to them. A win is 10000 and a
+	 * loss is -10000.
+	 * @return the score
+	 */
+	public int getScore() {
+		return score;
+	}
+	
+	/**
+	 * Get the moves both players are expected to make after this move,
+	 * taking turns. It can be shorter than the depth searched if the
+	 * positions weren't all kept in the transposition table.
+	 * @return the columns, starting with this move
+	 */
+	public int[] getPrincipalVariation() {
+		return principalVariation.clone();
+	}
+}
@@ -0,0 +1,41 @@
+package se2aa4;
+/**
+ * This enum is used to choose the order the AI tries
+ * the columns in. Trying the best moves first lets the
+ * AI skip more of the game tree.
+ */
+public enum MoveOrdering {
+	LEFT_TO_RIGHT,
+	CENTER_FIRST,
+	// Starts out center first but moves that caused cutoffs
+	// earlier in the search are tried before the others
+	KILLER_HISTORY;
+	
+	/**
+	 * Get the order to try the columns in.
+	 * @param width how many columns the board has
+	 * @return every column exactly once, in the order they should be tried
+	 */
+	public int[] getColumnOrder(int width) {
+		int[] order = new int[width];
+		for (int i = 0; i < width; i++) {
+			if (this != LEFT_TO_RIGHT) {
+				// Start in the middle and alternate going left and right
+				// since the middle columns are part of the most connect fours
+				order[i] = width / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+			} else {
+				order[i] = i;
+			}
+		}
+		return order;
+	}
+	
+	/**
+	 * Find if the order is learned during the search from the
+	 * moves that caused cutoffs, instead of always being the same.
+	 * @return true if killer moves and the history table are used
+	 */
+	public boolean isLearned() {
+		return this == KILLER_HISTORY;
+	}
+}
@@ -0,0 +1,155 @@
+package se2aa4;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class looks up the solved results of opening positions in a
+ * book made by {@link OpeningBookGenerator}. The file is memory mapped
+ * instead of read in so opening it is instant, and every program using
+ * the same book shares the same memory. The entries are sorted by position
+ * key so a position can be found with a binary search.
+ * <p>
+ * The file starts with a header of 4 ints: {@link #MAGIC}, the width and
+ * height of the board and the amount of entries. Each entry is the position
+ * key from the point of view of the player whose turn it is, followed by a
+ * byte for the best column and a byte for the score of the position.
+ * A position that isn't in the book is also looked up as its mirror image,
+ * so a book only needs one of every pair of mirrored positions.
+ * Books are only made for connect four, so boards that need a different
+ * amount of pieces in a row to win are never found in one.
+ */
+public class OpeningBook {
+	// Identifies the file as an opening book
+	public static final int MAGIC = 0x43344242;
+	// Returned by getScore if the position isn't in the book
+	public static final int NOT_FOUND = Integer.MIN_VALUE;
+	
+	static final int HEADER_BYTES = 4 * 4;
+	static final int ENTRY_BYTES = 8 + 1 + 1;
+	
+	private final MappedByteBuffer buffer;
+	private final int gridWidth;
+	private final int gridHeight;
+	private final int entryCount;
+	
+	/**
+	 * Create a book from a mapped file.
+	 * @param buffer the mapped file
+	 * @throws IOException if the file isn't an opening book
+	 */
+	private OpeningBook(MappedByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not an opening book");
+		}
+		gridWidth = buffer.getInt(4);
+		gridHeight = buffer.getInt(8);
+		entryCount = buffer.getInt(12);
+		if (buffer.capacity() < HEADER_BYTES + (long) entryCount * ENTRY_BYTES) {
+			throw new IOException("The opening book is incomplete");
+		}
+	}
+	
+	/**
+	 * Open a book stored in a file.
+	 * @param fileName the file the book is in
+	 * @return the book
+	 * @throws IOException if the file can't be read or isn't an opening book
+	 */
+	public static OpeningBook open(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			// The mapping stays valid after the file is closed
+			FileChannel channel = file.getChannel();
+			return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			file.close();
+		}
+	}
+	
+	/**
+	 * Find the entry of a position, or of its mirror image if the position isn't in the book.
+	 * @param board the board
+	 * @param player the player whose turn it is
+	 * @return the byte offset of the entry, or -1 if neither is in the book
+	 */
+	private int find(BoardModel board, PlayerColor player) {
+		int offset = find(board, board.getPositionKey(player));
+		if (offset == -1) {
+			offset = find(board, board.getMirrorPositionKey(player));
+		}
+		return offset;
+	}
+	
+	/**
+	 * Find the entry of a position key with a binary search.
+	 * @param board the board the key is from
+	 * @param key the key of the position from the point of view of the player whose turn it is
+	 * @return the byte offset of the entry, or -1 if it isn't in the book
+	 */
+	private int find(BoardModel board, long key) {
+		if (board.getGridWidth() != gridWidth || board.getGridHeight() != gridHeight
+				|| board.getConnectLength() != BoardModel.DEFAULT_CONNECT_LENGTH) {
+			return -1;
+		}
+		
+		int low = 0;
+		int high = entryCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int offset = HEADER_BYTES + middle * ENTRY_BYTES;
+			long middleKey = buffer.getLong(offset);
+			if (middleKey < key) {
+				low = middle + 1;
+			} else if (middleKey > key) {
+				high = middle - 1;
+			} else {
+				return offset;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Look up the best move of a position.
+	 * @param board the board
+	 * @param player the player whose turn it is
+	 * @return the best column, or -1 if the position isn't in the book
+	 */
+	public int getBestMove(BoardModel board, PlayerColor player) {
+		int offset = find(board, board.getPositionKey(player));
+		if (offset != -1) {
+			return buffer.get(offset + 8);
+		}
+		// The best move of the mirror image has to be mirrored back
+		offset = find(board, board.getMirrorPositionKey(player));
+		if (offset != -1) {
+			return board.getMirrorColumn(buffer.get(offset + 8));
+		}
+		return -1;
+	}
+	
+	/**
+	 * Look up the solved score of a position, as given by {@link SolverResult#getScore()}.
+	 * @param board the board
+	 * @param player the player whose turn it is
+	 * @return the score, or NOT_FOUND if the position isn't in the book
+	 */
+	public int getScore(BoardModel board, PlayerColor player) {
+		int offset = find(board, player);
+		if (offset == -1) {
+			return NOT_FOUND;
+		}
+		return buffer.get(offset + 9);
+	}
+	
+	/**
+	 * Find how many positions are in the book.
+	 * @return the amount of positions
+	 */
+	public int getEntryCount() {
+		return entryCount;
+	}
+}
@@ -0,0 +1,136 @@
+package se2aa4;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class makes an {@link OpeningBook} by solving every position
+ * that can be reached within a certain amount of moves. It is run on
+ * its own ahead of time since solving the openings takes a long time.
+ */
+public class OpeningBookGenerator {
+	private static final String DEFAULT_FILE_NAME = "book.bin";
+	private static final int DEFAULT_PLIES = 6;
+	
+	private final int gridWidth;
+	private final int gridHeight;
+	private final ConnectFourSolver solver;
+	// The best column and score of every solved position, packed into an int
+	private final HashMap<Long, Integer> entries;
+	
+	/**
+	 * Create a generator for boards the size of the given board.
+	 * @param board a board of the size to make a book for
+	 * @throws IllegalArgumentException if the board isn't connect four
+	 */
+	public OpeningBookGenerator(BoardModel board) {
+		// The book doesn't store the length of a winning line
+		if (board.getConnectLength() != BoardModel.DEFAULT_CONNECT_LENGTH) {
+			throw new IllegalArgumentException("Opening books are only made for connect four");
+		}
+		gridWidth = board.getGridWidth();
+		gridHeight = board.getGridHeight();
+		solver = new ConnectFourSolver(board);
+		entries = new HashMap<Long, Integer>();
+	}
+	
+	/**
+	 * Solve the given position and every position that can be reached from it
+	 * within a certain amount of moves, and add them to the book.
+	 * @param board the position to start from, it is the same once this returns
+	 * @param player the player whose turn it is
+	 * @param plies how many moves to look ahead
+	 */
+	public void generate(BoardModel board, PlayerColor player, int plies) {
+		// Positions where the game is over don't have a best move
+		if (board.getWinner() != PlayerColor.NONE || board.getPieceCount(PlayerColor.NONE) == 0) {
+			return;
+		}
+		
+		// Every path to a position has the same length so a position
+		// that was already added had everything after it added too. A mirror
+		// image is as good as the position itself since the book looks up both
+		long positionKey = board.getPositionKey(player);
+		long mirrorKey = board.getMirrorPositionKey(player);
+		if (entries.containsKey(positionKey) || entries.containsKey(mirrorKey)) {
+			return;
+		}
+		
+		SolverResult result = solver.solve(board, player);
+		entries.put(positionKey, (result.getBestMove() << 8) | (result.getScore() & 0xFF));
+		
+		if (plies > 0) {
+			for (int column = 0; column < gridWidth; column++) {
+				if (board.doTemporaryMove(column, player)) {
+					generate(board, player.opponent(), plies - 1);
+					board.undoTemporaryMove(column);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Write every position added so far to a book file.
+	 * @param fileName the file to write the book to
+	 * @throws IOException
+	 */
+	public void write(String fileName) throws IOException {
+		// The book is searched with a binary search so it has to be sorted
+		long[] keys = new long[entries.size()];
+		int i = 0;
+		for (Long key : entries.keySet()) {
+			keys[i++] = key;
+		}
+		Arrays.sort(keys);
+		
+		DataOutputStream outStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName, false)));
+		outStream.writeInt(OpeningBook.MAGIC);
+		outStream.writeInt(gridWidth);
+		outStream.writeInt(gridHeight);
+		outStream.writeInt(keys.length);
+		for (long key : keys) {
+			int entry = entries.get(key);
+			outStream.writeLong(key);
+			outStream.writeByte(entry >> 8);
+			outStream.writeByte(entry);
+		}
+		
+		outStream.close();
+	}
+	
+	/**
+	 * Find how many positions have been added so far.
+	 * @return the amount of positions
+	 */
+	public int getEntryCount() {
+		return entries.size();
+	}
+	
+	/**
+	 * Make a book for the normal board.
+	 * @param args optionally the file to write to and how many moves to look ahead
+	 */
+	public static void main(String[] args) throws IOException {
+		String fileName = (args.length > 0) ? args[0] : DEFAULT_FILE_NAME;
+		int plies = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+		
+		BoardModel board = new BoardModel();
+		OpeningBookGenerator generator = new OpeningBookGenerator(board);
+		// Start with the empty board itself, then solve what comes after each first
+		// move separately so there is something to show while it takes its time
+		generator.generate(board, PlayerColor.RED, 0);
+		if (plies > 0) {
+			for (int column = 0; column < board.getGridWidth(); column++) {
+				board.doTemporaryMove(column, PlayerColor.RED);
+				generator.generate(board, PlayerColor.BLUE, plies - 1);
+				board.undoTemporaryMove(column);
+				System.out.println("First move " + column + " done, " + generator.getEntryCount() + " positions solved");
+			}
+		}
+		generator.write(fileName);
+		System.out.println("Wrote " + generator.getEntryCount() + " positions to " + fileName);
+	}
+}
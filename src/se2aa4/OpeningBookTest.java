@@ -0,0 +1,81 @@
+package se2aa4;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OpeningBookTest {
+
+	static BoardModel theBoard; //a position late enough to solve quickly
+	static PlayerColor player; //whose turn it is
+	static OpeningBook book; //a book made from that position
+
+	@Before
+	public void setUp() throws Exception {
+		//play random moves until there are 28 pieces without a winner
+		Random random = new Random(3);
+		do {
+			theBoard = new BoardModel();
+			player = PlayerColor.RED;
+			while (theBoard.getPieceCount(PlayerColor.NONE) > 14 && theBoard.getWinner() == PlayerColor.NONE) {
+				if (theBoard.doTemporaryMove(random.nextInt(7), player))
+					player = player.opponent();
+			}
+		} while (theBoard.getWinner() != PlayerColor.NONE);
+
+		OpeningBookGenerator generator = new OpeningBookGenerator(theBoard);
+		generator.generate(theBoard, player, 2);
+		File file = File.createTempFile("book", ".bin");
+		file.deleteOnExit();
+		generator.write(file.getPath());
+		book = OpeningBook.open(file.getPath());
+	}
+
+	@Test
+	public void testGetBestMove() {
+		SolverResult expected = new ConnectFourSolver(theBoard, 1).solve(theBoard, player);
+		assertEquals(expected.getBestMove(), book.getBestMove(theBoard, player));
+		assertEquals(expected.getScore(), book.getScore(theBoard, player));
+	}
+
+	@Test
+	public void testPositionsAfterMoves() {
+		//every position within 2 moves should be in the book
+		for (int column = 0; column < 7; column++) {
+			if (theBoard.doTemporaryMove(column, player)) {
+				if (theBoard.getWinner() == PlayerColor.NONE && theBoard.getPieceCount(PlayerColor.NONE) > 0)
+					assertTrue(book.getBestMove(theBoard, player.opponent()) != -1);
+				theBoard.undoTemporaryMove(column);
+			}
+		}
+	}
+
+	@Test
+	public void testMirroredPosition() {
+		BoardModel mirror = new BoardModel();
+		for (int x = 0; x < 7; x++)
+			for (int y = 0; y < 6; y++)
+				mirror.setGridPiece(new Position(6 - x, y), theBoard.getGridPiece(new Position(x, y)));
+		//the mirror image is found through the position and its move is mirrored
+		assertEquals(book.getScore(theBoard, player), book.getScore(mirror, player));
+		assertEquals(6 - book.getBestMove(theBoard, player), book.getBestMove(mirror, player));
+	}
+
+	@Test
+	public void testMissingPosition() {
+		BoardModel empty = new BoardModel();
+		assertEquals(-1, book.getBestMove(empty, PlayerColor.RED));
+		assertEquals(OpeningBook.NOT_FOUND, book.getScore(empty, PlayerColor.RED));
+	}
+
+	@Test
+	public void testAIUsesBook() {
+		ConnectFourAI ai = new ConnectFourAI(theBoard.copy(), 1);
+		ai.setOpeningBook(book);
+		assertEquals(book.getBestMove(theBoard, player), ai.getBestMove(player));
+	}
+}
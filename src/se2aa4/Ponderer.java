@@ -0,0 +1,195 @@
+package se2aa4;
+
+import java.time.Duration;
+
+/**
+ * This class lets the AI think while the other player is deciding
+ * on their move. Every move the other player could make is searched
+ * on a background thread, a little longer each time around, until
+ * {@link #stop()} is called. All of the moves are searched by the same
+ * {@link ConnectFourAI}, usually the one playing the game, so when the
+ * other player moves its transposition table and move ordering are
+ * already filled in and its next search gets much deeper.
+ */
+public class Ponderer implements Runnable {
+	// How long each move is searched the first time around, it doubles every time after
+	private static final Duration FIRST_BUDGET = Duration.ofMillis(50);
+	// The longest each move is searched at once, so every move keeps getting a turn
+	private static final Duration MAX_BUDGET = Duration.ofSeconds(5);
+	
+	private final ConnectFourAI ai;
+	private final PlayerColor aiPlayer;
+	// The position after each move of the other player, or null if the
+	// move isn't possible or ends the game
+	private final BoardSnapshot[] replyPositions;
+	
+	private Thread thread;
+	private volatile boolean stopped;
+	
+	/**
+	 * Get ready to think about the moves the other player could make
+	 * with an AI of its own.
+	 * @param board the board after the AI's move, which isn't changed
+	 * @param aiPlayer the color of the AI
+	 * @param book the opening book for the AI to use, or null to not use one
+	 */
+	public Ponderer(BoardModel board, PlayerColor aiPlayer, OpeningBook book) {
+		this(board.snapshot(), aiPlayer, book);
+	}
+	
+	/**
+	 * Get ready to think about the moves the other player could make
+	 * with an AI of its own.
+	 * @param position the position after the AI's move
+	 * @param aiPlayer the color of the AI
+	 * @param book the opening book for the AI to use, or null to not use one
+	 */
+	public Ponderer(BoardSnapshot position, PlayerColor aiPlayer, OpeningBook book) {
+		this(createAI(position, book), position, aiPlayer);
+	}
+	
+	/**
+	 * Get ready to think about the moves the other player could make with
+	 * an AI that is already playing the game. The AI is moved around while
+	 * thinking, so it has to be moved back to the game's position before
+	 * it is used again. Its searches are synchronized on it.
+	 * @param ai the AI to think with
+	 * @param position the position after the AI's move
+	 * @param aiPlayer the color of the AI
+	 */
+	public Ponderer(ConnectFourAI ai, BoardSnapshot position, PlayerColor aiPlayer) {
+		this.ai = ai;
+		this.aiPlayer = aiPlayer;
+		int width = position.getGridWidth();
+		replyPositions = new BoardSnapshot[width];
+		for (int column = 0; column < width; column++) {
+			BoardModel reply = new BoardModel(position);
+			if (reply.doTemporaryMove(column, aiPlayer.opponent()) && reply.getWinner() == PlayerColor.NONE
+					&& reply.getPieceCount(PlayerColor.NONE) > 0) {
+				replyPositions[column] = reply.snapshot();
+			}
+		}
+	}
+	
+	/**
+	 * Create an AI for a ponderer that isn't given one.
+	 * @param position the position after the AI's move
+	 * @param book the opening book for the AI to use, or null to not use one
+	 * @return the AI
+	 */
+	private static ConnectFourAI createAI(BoardSnapshot position, OpeningBook book) {
+		ConnectFourAI ai = new ConnectFourAI(position);
+		ai.setOpeningBook(book);
+		return ai;
+	}
+	
+	/**
+	 * Start thinking on a background thread.
+	 */
+	public void start() {
+		thread = new Thread(this, "Ponderer");
+		// Don't keep the program running if the window is closed
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Search every move of the other player over and over with
+	 * more time each time, until stopped.
+	 */
+	@Override
+	public void run() {
+		int[] columnOrder = MoveOrdering.CENTER_FIRST.getColumnOrder(replyPositions.length);
+		// A move is left alone once its search is complete, and
+		// there is nothing left to do once every move's is
+		boolean[] complete = new boolean[replyPositions.length];
+		Duration budget = FIRST_BUDGET;
+		boolean searched = true;
+		while (!stopped && searched) {
+			searched = false;
+			for (int column : columnOrder) {
+				if (stopped) {
+					break;
+				}
+				if (replyPositions[column] != null && !complete[column]) {
+					synchronized (ai) {
+						ai.setPosition(replyPositions[column]);
+						// A token left over from the game's last search shouldn't stop these
+						ai.setCancellationToken(null);
+						ai.getBestMove(aiPlayer, budget);
+						complete[column] = ai.isSearchComplete();
+					}
+					searched = true;
+				}
+			}
+			if (budget.compareTo(MAX_BUDGET) < 0) {
+				budget = budget.multipliedBy(2);
+			}
+		}
+	}
+	
+	/**
+	 * Stop thinking and wait for the background thread to finish.
+	 * This is quick since the searches notice it right away.
+	 */
+	public void stop() {
+		stopped = true;
+		ai.stop();
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		ai.resume();
+	}
+	
+	/**
+	 * Check if the thinking stopped, either because {@link #stop()} was called
+	 * or because the search of every move is complete so there was nothing
+	 * left to think about.
+	 * @return true if the background thread isn't running
+	 */
+	public boolean isFinished() {
+		return thread != null && !thread.isAlive();
+	}
+	
+	/**
+	 * Get the AI that was thinking about a position. It should only be used
+	 * after {@link #stop()} since it could still be searching before that,
+	 * and it has to be moved to the position first. Searching the position
+	 * again with it is fast since the shallower searches are answered from
+	 * its transposition table.
+	 * @param board the board after the other player's move
+	 * @return the AI, or null if the position wasn't thought about
+	 */
+	public ConnectFourAI getReplyAI(BoardModel board) {
+		return getReplyAI(board.snapshot());
+	}
+	
+	/**
+	 * Get the AI that was thinking about the position of a snapshot,
+	 * the same way as {@link #getReplyAI(BoardModel)}.
+	 * @param position the position after the other player's move
+	 * @return the AI, or null if the position wasn't thought about
+	 */
+	public ConnectFourAI getReplyAI(BoardSnapshot position) {
+		int column = findReply(position);
+		return (column == -1) ? null : ai;
+	}
+	
+	/**
+	 * Find which move of the other player led to a position.
+	 * @param position the position after the other player's move
+	 * @return the column of the move, or -1 if it wasn't one of the moves thought about
+	 */
+	private int findReply(BoardSnapshot position) {
+		for (int column = 0; column < replyPositions.length; column++) {
+			if (replyPositions[column] != null && replyPositions[column].equals(position)) {
+				return column;
+			}
+		}
+		return -1;
+	}
+}
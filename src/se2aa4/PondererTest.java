@@ -0,0 +1,103 @@
+package se2aa4;
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PondererTest {
+
+	static BoardModel theBoard; //the board after the AI moved
+	static Ponderer ponderer; //thinking about blue's moves for red
+
+	@Before
+	public void setUp() throws Exception {
+		theBoard = new BoardModel();
+		theBoard.doTemporaryMove(3, PlayerColor.RED);
+		ponderer = new Ponderer(theBoard, PlayerColor.RED, null);
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		ponderer.start();
+		ponderer.stop();
+		assertTrue(ponderer.isFinished());
+		//the AI isn't left stopped, so a search too big to finish
+		//before it checks for being stopped still gets to the end
+		BoardModel reply = theBoard.copy();
+		reply.doTemporaryMove(3, PlayerColor.BLUE);
+		ConnectFourAI ai = ponderer.getReplyAI(reply);
+		ai.setPosition(reply);
+		assertEquals(8, ai.getSearchResult(PlayerColor.RED, 8).getStatistics().getDepth());
+	}
+
+	@Test
+	public void testGetReplyAI() throws Exception {
+		ponderer.start();
+		Thread.sleep(200);
+		ponderer.stop();
+
+		BoardModel reply = theBoard.copy();
+		reply.doTemporaryMove(2, PlayerColor.BLUE);
+		ConnectFourAI ai = ponderer.getReplyAI(reply);
+		assertNotNull(ai);
+		//the warm AI gives a legal move for the position
+		ai.setPosition(reply);
+		int move = ai.getBestMove(PlayerColor.RED, Duration.ofMillis(50));
+		assertTrue(reply.getColumnSpace(move) > 0);
+	}
+
+	@Test
+	public void testPondersWithTheGivenAI() throws Exception {
+		//on a tiny board every reply is searched to the end, so once
+		//the ponderer finishes by itself the AI has all of them in its table
+		BoardModel small = new BoardModel(3, 2, 3);
+		small.doTemporaryMove(1, PlayerColor.RED);
+		ConnectFourAI warm = new ConnectFourAI(small.copy());
+		Ponderer warmPonderer = new Ponderer(warm, small.snapshot(), PlayerColor.RED);
+		warmPonderer.start();
+		waitUntilFinished(warmPonderer);
+		warmPonderer.stop();
+
+		BoardModel reply = small.copy();
+		reply.doTemporaryMove(0, PlayerColor.BLUE);
+		assertSame(warm, warmPonderer.getReplyAI(reply));
+		warm.setPosition(reply);
+		long hitsBefore = warm.getTranspositionTable().getHits();
+		SearchResult warmResult = warm.getSearchResult(PlayerColor.RED, 4);
+		assertTrue(warm.getTranspositionTable().getHits() > hitsBefore);
+		//the same search without pondering first has to look at more of the tree
+		SearchResult coldResult = new ConnectFourAI(reply).getSearchResult(PlayerColor.RED, 4);
+		assertEquals(coldResult.getBestMove(), warmResult.getBestMove());
+		assertTrue(warmResult.getStatistics().getNodes() < coldResult.getStatistics().getNodes());
+	}
+
+	@Test
+	public void testFinishesNearTheEnd() throws Exception {
+		//every reply on a tiny board is searched to the end right away,
+		//so the thread stops by itself instead of searching forever
+		BoardModel small = new BoardModel(3, 2, 3);
+		small.doTemporaryMove(1, PlayerColor.RED);
+		Ponderer smallPonderer = new Ponderer(small, PlayerColor.RED, null);
+		smallPonderer.start();
+		waitUntilFinished(smallPonderer);
+		assertTrue(smallPonderer.isFinished());
+		smallPonderer.stop();
+	}
+
+	@Test
+	public void testUnknownPosition() {
+		assertNull(ponderer.getReplyAI(new BoardModel()));
+	}
+
+	/**
+	 * Wait for a ponderer to stop by itself, giving up after a long time
+	 * so a ponderer that never stops fails the test instead of hanging.
+	 */
+	static void waitUntilFinished(Ponderer ponderer) throws InterruptedException {
+		for (int i = 0; i < 3000 && !ponderer.isFinished(); i++)
+			Thread.sleep(10);
+	}
+}
@@ -3,17 +3,50 @@ package se2aa4;
  * This class is a simple record class. It is used
  * for convenience to store x,y pairs together.
  * Because it is only used as a record there is
- * no need for getters and setters.
+ * no need for getters and setters. It can't be changed
+ * once it is created so the same object can be shared.
  */
 public class Position {
-	public int x;
-	public int y;
+	// Positions inside this range are created once and shared
+	private static final int CACHE_SIZE = 16;
+	private static final Position[][] CACHE = createCache();
+	
+	public final int x;
+	public final int y;
 	
 	public Position(int x, int y) {
 		this.x = x;
 		this.y = y;
 	}
 	
+	/**
+	 * Create all the shared positions.
+	 * @return the shared positions indexed by x then y
+	 */
+	private static Position[][] createCache() {
+		Position[][] cache = new Position[CACHE_SIZE][CACHE_SIZE];
+		for (int x = 0; x < CACHE_SIZE; x++) {
+			for (int y = 0; y < CACHE_SIZE; y++) {
+				cache[x][y] = new Position(x, y);
+			}
+		}
+		return cache;
+	}
+	
+	/**
+	 * Get a position without creating a new object. Any position
+	 * on a normal sized board is shared instead of allocated.
+	 * @param x the x value
+	 * @param y the y value
+	 * @return a position with the given x and y values
+	 */
+	public static Position of(int x, int y) {
+		if (x >= 0 && x < CACHE_SIZE && y >= 0 && y < CACHE_SIZE) {
+			return CACHE[x][y];
+		}
+		return new Position(x, y);
+	}
+	
 	// These methods were automatically generated by Eclipse
 
 	/* (non-Javadoc)
@@ -0,0 +1,19 @@
+package se2aa4;
+/**
+ * This enum is used to choose how the AI searches the game tree.
+ * Every driver chooses the same move, they only differ in how
+ * much of the tree they have to look at to find it.
+ */
+public enum SearchDriver {
+	// Plain negamax with alpha-beta pruning
+	NEGAMAX,
+	// Principal variation search, which searches the first move with the full
+	// window and only checks if the rest are better with a zero window,
+	// searching them again if they are
+	PVS,
+	// MTD(f), which finds the value of the position with a series of zero
+	// window searches that rely on the transposition table to not repeat work.
+	// With more than one thread the moves at the root are searched all at once
+	// instead, and each of them is searched like NEGAMAX
+	MTDF
+}
@@ -0,0 +1,35 @@
+package se2aa4;
+/**
+ * This class is a simple record class that holds the move
+ * the AI chose and how much work it did to choose it.
+ */
+public class SearchResult {
+	private final int bestMove;
+	private final SearchStatistics statistics;
+	
+	/**
+	 * Create a new result.
+	 * @param bestMove the column the AI chose
+	 * @param statistics how much work the search did
+	 */
+	public SearchResult(int bestMove, SearchStatistics statistics) {
+		this.bestMove = bestMove;
+		this.statistics = statistics;
+	}
+	
+	/**
+	 * Get the move the AI chose.
+	 * @return the column a piece should be dropped into
+	 */
+	public int getBestMove() {
+		return bestMove;
+	}
+	
+	/**
+	 * Get how much work the search did.
+	 * @return the statistics
+	 */
+	public SearchStatistics getStatistics() {
+		return statistics;
+	}
+}
@@ -0,0 +1,159 @@
+package se2aa4;
+/**
+ * This class is a simple record class that holds how much work
+ * the AI did during a search. Statistics of several searches can
+ * be added together to see how the AI does over many games.
+ */
+public class SearchStatistics {
+	private final int searchCount;
+	private final long nodes;
+	private final long leaves;
+	private final int depth;
+	private final long expandedNodes;
+	private final long cutoffs;
+	private final long firstMoveCutoffs;
+	private final long tableProbes;
+	private final long tableHits;
+	private final long nanos;
+	
+	/**
+	 * Create the statistics of a single search.
+	 * @param nodes how many positions were searched
+	 * @param leaves how many positions were evaluated because the search couldn't look further
+	 * @param depth how many moves ahead the deepest finished search looked, 0 if the opening book was used
+	 * @param expandedNodes how many positions got as far as searching their moves
+	 * @param cutoffs how many positions didn't need all of their moves searched
+	 * @param firstMoveCutoffs how many of the cutoffs were caused by the first move tried
+	 * @param tableProbes how many times a position was looked up in the transposition table
+	 * @param tableHits how many of the look ups found the position
+	 * @param nanos how long the search took in nanoseconds
+	 */
+	public SearchStatistics(long nodes, long leaves, int depth, long expandedNodes, long cutoffs,
+			long firstMoveCutoffs, long tableProbes, long tableHits, long nanos) {
+		this(1, nodes, leaves, depth, expandedNodes, cutoffs, firstMoveCutoffs, tableProbes, tableHits, nanos);
+	}
+	
+	private SearchStatistics(int searchCount, long nodes, long leaves, int depth, long expandedNodes,
+			long cutoffs, long firstMoveCutoffs, long tableProbes, long tableHits, long nanos) {
+		this.searchCount = searchCount;
+		this.nodes = nodes;
+		this.leaves = leaves;
+		this.depth = depth;
+		this.expandedNodes = expandedNodes;
+		this.cutoffs = cutoffs;
+		this.firstMoveCutoffs = firstMoveCutoffs;
+		this.tableProbes = tableProbes;
+		this.tableHits = tableHits;
+		this.nanos = nanos;
+	}
+	
+	/**
+	 * Add the statistics of more searches to these ones.
+	 * @param other the statistics to add
+	 * @return the statistics of all of the searches, where the depth is the deepest one
+	 */
+	public SearchStatistics add(SearchStatistics other) {
+		return new SearchStatistics(searchCount + other.searchCount, nodes + other.nodes,
+				leaves + other.leaves, Math.max(depth, other.depth), expandedNodes + other.expandedNodes,
+				cutoffs + other.cutoffs,
+				firstMoveCutoffs + other.firstMoveCutoffs, tableProbes + other.tableProbes,
+				tableHits + other.tableHits, nanos + other.nanos);
+	}
+	
+	/**
+	 * Get how many searches these statistics are for.
+	 * @return the amount of searches
+	 */
+	public int getSearchCount() {
+		return searchCount;
+	}
+	
+	/**
+	 * Get how many positions were searched.
+	 * @return the amount of positions
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * Get how many positions were evaluated because the search couldn't look further.
+	 * @return the amount of positions
+	 */
+	public long getLeaves() {
+		return leaves;
+	}
+	
+	/**
+	 * Get how many moves ahead the deepest finished search looked.
+	 * @return the depth, 0 if the opening book was used
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * Get how many positions got as far as searching their moves. The rest were
+	 * decided before that, by a win, the transposition table or a forced move.
+	 * @return the amount of positions
+	 */
+	public long getExpandedNodes() {
+		return expandedNodes;
+	}
+	
+	/**
+	 * Get how many positions didn't need all of their moves searched.
+	 * @return the amount of cutoffs
+	 */
+	public long getCutoffs() {
+		return cutoffs;
+	}
+	
+	/**
+	 * Get the fraction of the positions that had moves searched that
+	 * didn't need all of them searched.
+	 * @return the cutoff rate between 0 and 1
+	 */
+	public double getCutoffRate() {
+		return (expandedNodes == 0) ? 0 : (double) cutoffs / expandedNodes;
+	}
+	
+	/**
+	 * Get the fraction of the cutoffs that were caused by the first move
+	 * tried. The closer this is to 1 the better the moves are ordered.
+	 * @return the fraction between 0 and 1
+	 */
+	public double getFirstMoveCutoffRate() {
+		return (cutoffs == 0) ? 0 : (double) firstMoveCutoffs / cutoffs;
+	}
+	
+	/**
+	 * Get the fraction of the transposition table look ups that found the position.
+	 * @return the hit rate between 0 and 1
+	 */
+	public double getTableHitRate() {
+		return (tableProbes == 0) ? 0 : (double) tableHits / tableProbes;
+	}
+	
+	/**
+	 * Get how long the searches took.
+	 * @return the time in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+	
+	/**
+	 * Get how fast positions were searched.
+	 * @return the amount of positions per second
+	 */
+	public long getNodesPerSecond() {
+		return (nanos == 0) ? 0 : (long) (nodes * 1e9 / nanos);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Depth %d, %d nodes in %d ms (%d nodes/s), %.0f%% cutoffs, %.0f%% table hits",
+				depth, nodes, nanos / 1000000, getNodesPerSecond(), 100 * getCutoffRate(), 100 * getTableHitRate());
+	}
+}
@@ -0,0 +1,69 @@
+package se2aa4;
+/**
+ * This class is a simple record class that holds the exact
+ * result of a position when both players play perfectly.
+ */
+public class SolverResult {
+	private final PlayerColor winner;
+	private final int score;
+	private final int movesToEnd;
+	private final int bestMove;
+	
+	/**
+	 * Create a new result.
+	 * @param winner the player who wins, or NONE if it is a draw
+	 * @param score positive if the player whose turn it is wins, negative if they lose
+	 * and 0 for a draw. The faster the win the bigger the score.
+	 * @param movesToEnd how many more pieces are dropped until the game ends, including the last one
+	 * @param bestMove the column that gets this result, or -1 if there isn't one
+	 */
+	public SolverResult(PlayerColor winner, int score, int movesToEnd, int bestMove) {
+		this.winner = winner;
+		this.score = score;
+		this.movesToEnd = movesToEnd;
+		this.bestMove = bestMove;
+	}
+	
+	/**
+	 * Get the player who wins with perfect play.
+	 * @return the winner, or NONE if it is a draw
+	 */
+	public PlayerColor getWinner() {
+		return winner;
+	}
+	
+	/**
+	 * Get the score for the player whose turn it is. It is the number of
+	 * pieces the winner still has left when they win, negative if that is
+	 * the opponent, or 0 for a draw.
+	 * @return the score
+	 */
+	public int getScore() {
+		return score;
+	}
+	
+	/**
+	 * Get how many more pieces are dropped until the game ends,
+	 * counting both players and including the winning piece.
+	 * @return the amount of moves left
+	 */
+	public int getMovesToEnd() {
+		return movesToEnd;
+	}
+	
+	/**
+	 * Get a move that gets this result.
+	 * @return the column, or -1 if the game is already over
+	 */
+	public int getBestMove() {
+		return bestMove;
+	}
+	
+	@Override
+	public String toString() {
+		if (winner == PlayerColor.NONE) {
+			return "Draw in " + movesToEnd + " moves";
+		}
+		return winner.toString() + " wins in " + movesToEnd + " moves";
+	}
+}
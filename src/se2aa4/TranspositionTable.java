@@ -0,0 +1,198 @@
+package se2aa4;
+/**
+ * This class remembers the results of positions the AI has
+ * already searched so they don't have to be searched again
+ * when the same position is reached through different moves.
+ * It has a fixed size and is made out of primitive arrays so
+ * looking up and storing results never creates any objects.
+ * Each result is packed into a single int which is 0 if nothing
+ * was found, the static methods are used to unpack it.
+ */
+public class TranspositionTable {
+	// The kinds of scores that can be stored
+	public static final int EXACT = 1;
+	public static final int LOWER_BOUND = 2;
+	public static final int UPPER_BOUND = 3;
+
+	// The amount of memory one entry uses: the key, the packed result and the age
+	private static final int ENTRY_BYTES = 8 + 4 + 1;
+
+	private final long[] keys;
+	private final int[] entries;
+	private final byte[] ages;
+	private final int indexShift;
+
+	// The current search, results from older searches are replaced first
+	private byte age;
+
+	private long hits;
+	private long misses;
+	private long collisions;
+
+	/**
+	 * Create a table that uses at most the given amount of memory.
+	 * @param megabytes the maximum amount of memory to use
+	 */
+	public TranspositionTable(int megabytes) {
+		// Use a power of 2 for the size so the index can be found by shifting
+		long maxEntries = Math.max(1L, megabytes * 1024L * 1024L / ENTRY_BYTES);
+		int size = (int) Long.highestOneBit(Math.min(maxEntries, 1 << 30));
+		keys = new long[size];
+		entries = new int[size];
+		ages = new byte[size];
+		indexShift = 64 - Integer.numberOfTrailingZeros(size);
+	}
+
+	/**
+	 * Find the slot a key belongs in.
+	 * @param key the position key
+	 * @return the index of the slot
+	 */
+	private int indexOf(long key) {
+		// Multiplying spreads every bit of the key into the top bits
+		if (indexShift == 64)
+			return 0;
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> indexShift);
+	}
+
+	/**
+	 * Look up the stored result of a position.
+	 * @param key the position key
+	 * @return the packed result, or 0 if it wasn't found
+	 */
+	public int probe(long key) {
+		int index = indexOf(key);
+		int entry = entries[index];
+		if (entry != 0 && keys[index] == key) {
+			hits++;
+			return entry;
+		}
+
+		misses++;
+		if (entry != 0) {
+			// Another position is using this slot
+			collisions++;
+		}
+		return 0;
+	}
+
+	/**
+	 * Store the result of a position. If another position is using the slot
+	 * it is only replaced if it is from an older search or it was searched
+	 * less deeply than this one.
+	 * @param key the position key
+	 * @param score the score of the position
+	 * @param depth how deep the position was searched
+	 * @param bound EXACT, LOWER_BOUND or UPPER_BOUND depending on what the score means
+	 * @param move the best column found, or 0 if unknown
+	 */
+	public void store(long key, int score, int depth, int bound, int move) {
+		int index = indexOf(key);
+		int oldEntry = entries[index];
+		if (oldEntry != 0 && keys[index] != key && ages[index] == age && getDepth(oldEntry) > depth) {
+			return;
+		}
+
+		keys[index] = key;
+		entries[index] = ((score + 32768) << 16) | (depth << 8) | (move << 2) | bound;
+		ages[index] = age;
+	}
+
+	/**
+	 * Let the table know a new search is starting so older results
+	 * can be replaced by newer ones.
+	 */
+	public void newSearch() {
+		age++;
+	}
+
+	/**
+	 * Remove every stored result.
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length; i++) {
+			keys[i] = 0;
+			entries[i] = 0;
+			ages[i] = 0;
+		}
+		age = 0;
+	}
+
+	/**
+	 * Get the score of a packed result.
+	 * @param entry the packed result
+	 * @return the score
+	 */
+	public static int getScore(int entry) {
+		return (entry >>> 16) - 32768;
+	}
+
+	/**
+	 * Get how deep the position of a packed result was searched.
+	 * @param entry the packed result
+	 * @return the depth
+	 */
+	public static int getDepth(int entry) {
+		return (entry >>> 8) & 0xFF;
+	}
+
+	/**
+	 * Get the best column of a packed result.
+	 * @param entry the packed result
+	 * @return the column
+	 */
+	public static int getMove(int entry) {
+		return (entry >>> 2) & 0x3F;
+	}
+
+	/**
+	 * Get what kind of score a packed result has.
+	 * @param entry the packed result
+	 * @return EXACT, LOWER_BOUND or UPPER_BOUND
+	 */
+	public static int getBound(int entry) {
+		return entry & 0x3;
+	}
+
+	/**
+	 * Find how many results the table can hold.
+	 * @return the amount of slots
+	 */
+	public int getSize() {
+		return entries.length;
+	}
+
+	/**
+	 * Find how many lookups found a result.
+	 * @return the amount of hits
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Find how many lookups didn't find a result.
+	 * @return the amount of misses
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Find how many lookups didn't find a result because
+	 * another position was using the same slot.
+	 * @return the amount of collisions
+	 */
+	public long getCollisions() {
+		return collisions;
+	}
+
+	/**
+	 * Set the hit, miss and collision counts back to 0.
+	 */
+	public void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		collisions = 0;
+	}
+}
@@ -0,0 +1,49 @@
+package se2aa4;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TranspositionTableTest {
+
+	static TranspositionTable table; //a table with a single slot so every key collides
+
+	@Before
+	public void setUp() throws Exception {
+		table = new TranspositionTable(0);
+	}
+
+	@Test
+	public void testStoreAndProbe() {
+		table.store(12345L, -9999, 7, TranspositionTable.UPPER_BOUND, 6);
+		int entry = table.probe(12345L);
+		assertEquals(-9999, TranspositionTable.getScore(entry));
+		assertEquals(7, TranspositionTable.getDepth(entry));
+		assertEquals(TranspositionTable.UPPER_BOUND, TranspositionTable.getBound(entry));
+		assertEquals(6, TranspositionTable.getMove(entry));
+		assertEquals(1, table.getHits());
+	}
+
+	@Test
+	public void testProbeMiss() {
+		assertEquals(0, table.probe(12345L));
+		table.store(12345L, 10, 3, TranspositionTable.EXACT, 0);
+		//a different key in the same slot is a collision
+		assertEquals(0, table.probe(54321L));
+		assertEquals(2, table.getMisses());
+		assertEquals(1, table.getCollisions());
+	}
+
+	@Test
+	public void testReplacement() {
+		table.store(1L, 10, 5, TranspositionTable.EXACT, 0);
+		//a shallower result from the same search doesn't replace a deeper one
+		table.store(2L, 20, 4, TranspositionTable.EXACT, 0);
+		assertEquals(10, TranspositionTable.getScore(table.probe(1L)));
+		//but it does after a new search starts
+		table.newSearch();
+		table.store(2L, 20, 4, TranspositionTable.EXACT, 0);
+		assertEquals(20, TranspositionTable.getScore(table.probe(2L)));
+	}
+}
@@ -0,0 +1,153 @@
+package se2aa4;
+/**
+ * This class scores a board the same way {@link ConnectFourAI} always has:
+ * every possible connect four, or window, that only has one player's pieces
+ * in it is worth the square of the amount of pieces to that player. On boards
+ * that take more or less than four in a row to win, the windows are that long.
+ * Instead of looking at every window each time a board is scored, it keeps
+ * the amount of each player's pieces in every window and the total score,
+ * and only updates the windows going through a spot when a piece is added
+ * or removed there. Getting the score is then just reading a field.
+ */
+public class WindowEvaluator {
+	// The windows that go through each cell
+	private final int[][] cellWindows;
+	private final int[] redCounts;
+	private final int[] blueCounts;
+	
+	// The total score from red's point of view
+	private int score;
+	
+	/**
+	 * Create an evaluator for boards the size of the given board.
+	 * It starts out empty, use {@link #reset(BoardModel)} to load a board.
+	 * @param board a board of the size to evaluate
+	 */
+	public WindowEvaluator(BoardModel board) {
+		int width = board.getGridWidth();
+		int height = board.getGridHeight();
+		int windowLength = board.getConnectLength();
+		
+		// Find every window going right, down, down-right and down-left
+		int[][] directions = {{1, 0}, {0, 1}, {1, 1}, {-1, 1}};
+		int[][] windows = new int[4 * width * height][];
+		int windowCount = 0;
+		for (int[] direction : directions) {
+			for (int x = 0; x < width; x++) {
+				for (int y = 0; y < height; y++) {
+					int endX = x + (windowLength - 1) * direction[0];
+					int endY = y + (windowLength - 1) * direction[1];
+					if (endX < 0 || endX >= width || endY >= height) {
+						continue;
+					}
+					int[] window = new int[windowLength];
+					for (int i = 0; i < windowLength; i++) {
+						window[i] = board.getCellIndex(x + i * direction[0], y + i * direction[1]);
+					}
+					windows[windowCount++] = window;
+				}
+			}
+		}
+		
+		// Turn the list of cells in each window into a list of windows for each cell
+		int[] windowsPerCell = new int[board.getCellCount()];
+		for (int w = 0; w < windowCount; w++) {
+			for (int cell : windows[w]) {
+				windowsPerCell[cell]++;
+			}
+		}
+		cellWindows = new int[board.getCellCount()][];
+		for (int cell = 0; cell < cellWindows.length; cell++) {
+			cellWindows[cell] = new int[windowsPerCell[cell]];
+			windowsPerCell[cell] = 0;
+		}
+		for (int w = 0; w < windowCount; w++) {
+			for (int cell : windows[w]) {
+				cellWindows[cell][windowsPerCell[cell]++] = w;
+			}
+		}
+		
+		redCounts = new int[windowCount];
+		blueCounts = new int[windowCount];
+	}
+	
+	/**
+	 * Find the value of a window to red.
+	 * @param red the amount of red pieces in it
+	 * @param blue the amount of blue pieces in it
+	 * @return the value
+	 */
+	private static int windowValue(int red, int blue) {
+		// If the window contains both colors it is useless. The value of a partially
+		// completed connect four is approximately proportional to the square of how
+		// many pieces are in it because more pieces are a lot better
+		if (blue == 0) {
+			return red * red;
+		} else if (red == 0) {
+			return -blue * blue;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Let the evaluator know a piece was added to the board.
+	 * @param cell the cell index of the piece
+	 * @param color the color of the piece
+	 */
+	public void addPiece(int cell, PlayerColor color) {
+		for (int w : cellWindows[cell]) {
+			score -= windowValue(redCounts[w], blueCounts[w]);
+			if (color == PlayerColor.RED) {
+				redCounts[w]++;
+			} else {
+				blueCounts[w]++;
+			}
+			score += windowValue(redCounts[w], blueCounts[w]);
+		}
+	}
+	
+	/**
+	 * Let the evaluator know a piece was removed from the board.
+	 * @param cell the cell index of the piece
+	 * @param color the color of the piece
+	 */
+	public void removePiece(int cell, PlayerColor color) {
+		for (int w : cellWindows[cell]) {
+			score -= windowValue(redCounts[w], blueCounts[w]);
+			if (color == PlayerColor.RED) {
+				redCounts[w]--;
+			} else {
+				blueCounts[w]--;
+			}
+			score += windowValue(redCounts[w], blueCounts[w]);
+		}
+	}
+	
+	/**
+	 * Forget every piece and load all the pieces of a board.
+	 * @param board the board to load
+	 */
+	public void reset(BoardModel board) {
+		for (int w = 0; w < redCounts.length; w++) {
+			redCounts[w] = 0;
+			blueCounts[w] = 0;
+		}
+		score = 0;
+		
+		for (int cell = 0; cell < cellWindows.length; cell++) {
+			PlayerColor color = board.getCellPiece(cell);
+			if (color != PlayerColor.NONE) {
+				addPiece(cell, color);
+			}
+		}
+	}
+	
+	/**
+	 * Get the score of the board from a player's point of view.
+	 * @param player the player
+	 * @return a score with higher values more favorable to the player
+	 */
+	public int evaluate(PlayerColor player) {
+		return (player == PlayerColor.RED) ? score : -score;
+	}
+}